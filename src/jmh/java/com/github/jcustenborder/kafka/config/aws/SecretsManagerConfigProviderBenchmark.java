@@ -0,0 +1,192 @@
+/**
+ * Copyright © 2021 Jeremy Custenborder (jcustenborder@gmail.com)
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.github.jcustenborder.kafka.config.aws;
+
+import com.amazonaws.handlers.AsyncHandler;
+import com.amazonaws.services.secretsmanager.AWSSecretsManager;
+import com.amazonaws.services.secretsmanager.AWSSecretsManagerAsync;
+import com.amazonaws.services.secretsmanager.AbstractAWSSecretsManagerAsync;
+import com.amazonaws.services.secretsmanager.model.GetSecretValueRequest;
+import com.amazonaws.services.secretsmanager.model.GetSecretValueResult;
+import org.apache.kafka.common.config.ConfigData;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Threads;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.LinkedHashSet;
+import java.util.Map;
+import java.util.Random;
+import java.util.Set;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Measures SecretsManagerConfigProvider.get() against an in-memory Secrets Manager client so that
+ * results do not depend on network access or AWS credentials. Payloads are generated from a fixed
+ * seed. The number of threads can be overridden with the JMH -t option.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Warmup(iterations = 3, time = 5)
+@Measurement(iterations = 5, time = 5)
+@Fork(1)
+public class SecretsManagerConfigProviderBenchmark {
+  static final String PATH = "connectors/benchmark";
+  static final int VALUE_LENGTH = 32;
+
+  /**
+   * Number of fields in the secret.
+   */
+  @Param({"4", "64", "1024"})
+  public int fields;
+
+  /**
+   * Number of keys requested per call. 0 requests every key.
+   */
+  @Param({"0", "1", "8"})
+  public int keys;
+
+  @Param({"false", "true"})
+  public boolean prefix;
+
+  @Param({"false", "true"})
+  public boolean binary;
+
+  /**
+   * When false the cached secret is dropped before every call so the retrieval is measured as well.
+   */
+  @Param({"true", "false"})
+  public boolean cached;
+
+  SecretsManagerConfigProvider provider;
+  Set<String> requestedKeys;
+  String secretId;
+
+  @Setup(Level.Trial)
+  public void setup() {
+    final GetSecretValueResult result = secret();
+    final AWSSecretsManagerAsync secretsManager = new AbstractAWSSecretsManagerAsync() {
+      @Override
+      public GetSecretValueResult getSecretValue(GetSecretValueRequest request) {
+        return result.clone();
+      }
+
+      @Override
+      public Future<GetSecretValueResult> getSecretValueAsync(GetSecretValueRequest request,
+                                                              AsyncHandler<GetSecretValueRequest, GetSecretValueResult> handler) {
+        GetSecretValueResult response = result.clone();
+        handler.onSuccess(request, response);
+        return CompletableFuture.completedFuture(response);
+      }
+
+      @Override
+      public void shutdown() {
+      }
+    };
+
+    Map<String, String> settings = new HashMap<>();
+    settings.put(SecretsManagerConfigProviderConfig.REGION_CONFIG, "us-east-1");
+    settings.put(SecretsManagerConfigProviderConfig.MAX_REQUESTS_PER_SECOND_CONFIG, Integer.toString(Integer.MAX_VALUE));
+    if (this.prefix) {
+      settings.put(SecretsManagerConfigProviderConfig.PREFIX_CONFIG, "benchmark/environment");
+    }
+    this.provider = new SecretsManagerConfigProvider();
+    this.provider.cache = new SecretCache(SecretCache.DEFAULT_MAXIMUM_BYTES, true);
+    this.provider.secretsManagerFactory = new SecretsManagerFactory() {
+      @Override
+      public AWSSecretsManager create(SecretsManagerConfigProviderConfig config) {
+        return secretsManager;
+      }
+
+      @Override
+      public AWSSecretsManagerAsync createAsync(SecretsManagerConfigProviderConfig config) {
+        return secretsManager;
+      }
+    };
+    this.provider.configure(settings);
+    this.secretId = this.provider.secretId(PATH);
+
+    this.requestedKeys = new LinkedHashSet<>();
+    for (int i = 0; i < this.keys; i++) {
+      this.requestedKeys.add("key" + (i * this.fields / this.keys));
+    }
+  }
+
+  GetSecretValueResult secret() {
+    Random random = new Random(this.fields);
+    StringBuilder builder = new StringBuilder("{");
+    for (int i = 0; i < this.fields; i++) {
+      if (i > 0) {
+        builder.append(',');
+      }
+      builder.append("\"key").append(i).append("\":\"");
+      for (int j = 0; j < VALUE_LENGTH; j++) {
+        builder.append((char) ('a' + random.nextInt(26)));
+      }
+      builder.append('"');
+    }
+    builder.append('}');
+
+    GetSecretValueResult result = new GetSecretValueResult()
+        .withName(PATH)
+        .withVersionId("benchmark");
+    return this.binary ?
+        result.withSecretBinary(ByteBuffer.wrap(builder.toString().getBytes(StandardCharsets.UTF_8))) :
+        result.withSecretString(builder.toString());
+  }
+
+  @TearDown(Level.Trial)
+  public void tearDown() throws IOException {
+    this.provider.close();
+  }
+
+  ConfigData get() {
+    if (!this.cached) {
+      this.provider.cache.invalidate(this.provider.clientKey, this.secretId);
+    }
+    return this.provider.get(PATH, this.requestedKeys.isEmpty() ? Collections.emptySet() : this.requestedKeys);
+  }
+
+  @Benchmark
+  @Threads(1)
+  public ConfigData getSingleThreaded() {
+    return get();
+  }
+
+  @Benchmark
+  @Threads(Threads.MAX)
+  public ConfigData getContended() {
+    return get();
+  }
+}
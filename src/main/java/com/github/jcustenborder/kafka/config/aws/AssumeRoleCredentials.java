@@ -0,0 +1,201 @@
+/**
+ * Copyright © 2021 Jeremy Custenborder (jcustenborder@gmail.com)
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.github.jcustenborder.kafka.config.aws;
+
+import com.amazonaws.auth.AWSCredentialsProvider;
+import com.amazonaws.auth.AWSStaticCredentialsProvider;
+import com.amazonaws.auth.STSAssumeRoleSessionCredentialsProvider;
+import com.amazonaws.services.securitytoken.AWSSecurityTokenService;
+import com.amazonaws.services.securitytoken.AWSSecurityTokenServiceClientBuilder;
+import com.google.common.util.concurrent.ThreadFactoryBuilder;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.util.HashMap;
+import java.util.IdentityHashMap;
+import java.util.Map;
+import java.util.Objects;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+
+/**
+ * JVM wide registry of assume role sessions. Every client that uses the same role, external id and
+ * source credentials shares one session. The session is requested in the background as soon as it is
+ * created and refreshed in the background before it expires, so a lookup only waits for STS when the
+ * session could not be refreshed in time. The session is closed once the last client using it is
+ * released.
+ */
+class AssumeRoleCredentials {
+  private static final Logger log = LoggerFactory.getLogger(AssumeRoleCredentials.class);
+  static final AssumeRoleCredentials INSTANCE = new AssumeRoleCredentials();
+  static final String DEFAULT_STS_REGION = "us-east-1";
+
+  final Map<Key, Reference> references = new HashMap<>();
+  final Map<AWSCredentialsProvider, Reference> providers = new IdentityHashMap<>();
+
+  /**
+   * Returns the credentials provider for the config, or null when the default credential chain
+   * should be used. Every provider returned must be passed to release().
+   */
+  synchronized AWSCredentialsProvider acquire(SecretsManagerConfigProviderConfig config) {
+    if (config.assumeRoleArn.isEmpty()) {
+      return null != config.credentials ? new AWSStaticCredentialsProvider(config.credentials) : null;
+    }
+    Key key = Key.of(config);
+    Reference reference = this.references.get(key);
+    if (null == reference) {
+      log.debug("acquire() - Creating session for {}", key);
+      reference = create(key, config);
+      this.references.put(key, reference);
+      this.providers.put(reference.provider, reference);
+    }
+    reference.count++;
+    return reference.provider;
+  }
+
+  synchronized void release(AWSCredentialsProvider provider) {
+    Reference reference = this.providers.get(provider);
+    if (null == reference) {
+      return;
+    }
+    reference.count--;
+    if (reference.count <= 0) {
+      log.debug("release() - Closing session for {}", reference.key);
+      this.references.remove(reference.key);
+      this.providers.remove(reference.provider);
+      reference.close();
+    }
+  }
+
+  Reference create(Key key, SecretsManagerConfigProviderConfig config) {
+    AWSSecurityTokenServiceClientBuilder stsBuilder = AWSSecurityTokenServiceClientBuilder.standard()
+        .withRegion(config.region.isEmpty() ? DEFAULT_STS_REGION : config.region);
+    if (null != config.credentials) {
+      stsBuilder = stsBuilder.withCredentials(new AWSStaticCredentialsProvider(config.credentials));
+    }
+    AWSSecurityTokenService sts = stsBuilder.build();
+
+    ExecutorService executorService = Executors.newSingleThreadExecutor(
+        new ThreadFactoryBuilder()
+            .setDaemon(true)
+            .setNameFormat("secrets-manager-credentials-%d")
+            .build()
+    );
+    STSAssumeRoleSessionCredentialsProvider.Builder builder = new STSAssumeRoleSessionCredentialsProvider.Builder(
+        config.assumeRoleArn,
+        config.assumeRoleSessionName
+    ).withStsClient(sts)
+        .withRoleSessionDurationSeconds(config.assumeRoleSessionDurationSeconds)
+        .withAsyncRefreshExecutor(executorService);
+    if (!config.assumeRoleExternalId.isEmpty()) {
+      builder = builder.withExternalId(config.assumeRoleExternalId);
+    }
+    STSAssumeRoleSessionCredentialsProvider provider = builder.build();
+    executorService.execute(() -> {
+      try {
+        provider.getCredentials();
+      } catch (RuntimeException ex) {
+        log.warn("create() - Could not assume role '{}'. Retrying on first use.", config.assumeRoleArn, ex);
+      }
+    });
+    return new Reference(key, provider, sts, executorService);
+  }
+
+  /**
+   * The session provider does not own the STS client or the refresh executor passed to it, so both
+   * are shut down here along with it.
+   */
+  static class Reference {
+    final Key key;
+    final STSAssumeRoleSessionCredentialsProvider provider;
+    final AWSSecurityTokenService sts;
+    final ExecutorService executorService;
+    int count;
+
+    Reference(Key key, STSAssumeRoleSessionCredentialsProvider provider, AWSSecurityTokenService sts, ExecutorService executorService) {
+      this.key = key;
+      this.provider = provider;
+      this.sts = sts;
+      this.executorService = executorService;
+    }
+
+    void close() {
+      this.provider.close();
+      this.executorService.shutdownNow();
+      this.sts.shutdown();
+    }
+  }
+
+  static class Key {
+    final String roleArn;
+    final String externalId;
+    final String sessionName;
+    final int sessionDurationSeconds;
+    final String region;
+    final String accessKeyId;
+    final String secretKey;
+
+    Key(String roleArn, String externalId, String sessionName, int sessionDurationSeconds, String region, String accessKeyId, String secretKey) {
+      this.roleArn = roleArn;
+      this.externalId = externalId;
+      this.sessionName = sessionName;
+      this.sessionDurationSeconds = sessionDurationSeconds;
+      this.region = region;
+      this.accessKeyId = accessKeyId;
+      this.secretKey = secretKey;
+    }
+
+    static Key of(SecretsManagerConfigProviderConfig config) {
+      return new Key(
+          config.assumeRoleArn,
+          config.assumeRoleExternalId,
+          config.assumeRoleSessionName,
+          config.assumeRoleSessionDurationSeconds,
+          config.region,
+          null != config.credentials ? config.credentials.getAWSAccessKeyId() : null,
+          null != config.credentials ? config.credentials.getAWSSecretKey() : null
+      );
+    }
+
+    @Override
+    public boolean equals(Object o) {
+      if (this == o) {
+        return true;
+      }
+      if (!(o instanceof Key)) {
+        return false;
+      }
+      Key that = (Key) o;
+      return this.sessionDurationSeconds == that.sessionDurationSeconds &&
+          this.roleArn.equals(that.roleArn) &&
+          this.externalId.equals(that.externalId) &&
+          this.sessionName.equals(that.sessionName) &&
+          this.region.equals(that.region) &&
+          Objects.equals(this.accessKeyId, that.accessKeyId) &&
+          Objects.equals(this.secretKey, that.secretKey);
+    }
+
+    @Override
+    public int hashCode() {
+      return Objects.hash(this.roleArn, this.externalId, this.sessionName, this.sessionDurationSeconds, this.region, this.accessKeyId);
+    }
+
+    @Override
+    public String toString() {
+      return String.format("AssumeRole{roleArn='%s', sessionName='%s', region='%s'}", this.roleArn, this.sessionName, this.region);
+    }
+  }
+}
@@ -0,0 +1,71 @@
+/**
+ * Copyright © 2021 Jeremy Custenborder (jcustenborder@gmail.com)
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.github.jcustenborder.kafka.config.aws;
+
+import com.amazonaws.AmazonWebServiceRequest;
+import com.amazonaws.handlers.AsyncHandler;
+import com.amazonaws.services.secretsmanager.AWSSecretsManagerAsync;
+import com.amazonaws.services.secretsmanager.model.DescribeSecretRequest;
+import com.amazonaws.services.secretsmanager.model.DescribeSecretResult;
+import com.amazonaws.services.secretsmanager.model.GetSecretValueRequest;
+import com.amazonaws.services.secretsmanager.model.GetSecretValueResult;
+
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.Future;
+import java.util.function.BiFunction;
+
+/**
+ * Exposes the calls made by the provider as CompletableFutures. Requests pass through the throttle
+ * without blocking and complete on the threads of the asynchronous client.
+ */
+class AsyncSecretsManager {
+  final AWSSecretsManagerAsync secretsManager;
+  final SecretsManagerThrottle throttle;
+
+  AsyncSecretsManager(AWSSecretsManagerAsync secretsManager, SecretsManagerThrottle throttle) {
+    this.secretsManager = secretsManager;
+    this.throttle = throttle;
+  }
+
+  CompletableFuture<GetSecretValueResult> getSecretValue(String secretId) {
+    GetSecretValueRequest request = new GetSecretValueRequest()
+        .withSecretId(secretId);
+    return this.throttle.executeAsync(() -> call(this.secretsManager::getSecretValueAsync, request));
+  }
+
+  CompletableFuture<DescribeSecretResult> describeSecret(String secretId) {
+    DescribeSecretRequest request = new DescribeSecretRequest()
+        .withSecretId(secretId);
+    return this.throttle.executeAsync(() -> call(this.secretsManager::describeSecretAsync, request));
+  }
+
+  static <REQUEST extends AmazonWebServiceRequest, RESULT> CompletableFuture<RESULT> call(
+      BiFunction<REQUEST, AsyncHandler<REQUEST, RESULT>, Future<RESULT>> method, REQUEST request) {
+    CompletableFuture<RESULT> result = new CompletableFuture<>();
+    method.apply(request, new AsyncHandler<REQUEST, RESULT>() {
+      @Override
+      public void onError(Exception exception) {
+        result.completeExceptionally(exception);
+      }
+
+      @Override
+      public void onSuccess(REQUEST request, RESULT response) {
+        result.complete(response);
+      }
+    });
+    return result;
+  }
+}
@@ -0,0 +1,125 @@
+/**
+ * Copyright © 2021 Jeremy Custenborder (jcustenborder@gmail.com)
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.github.jcustenborder.kafka.config.aws;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+
+/**
+ * A secret that has been retrieved from Secrets Manager. The payload is kept as it was returned and
+ * only the requested keys are extracted from it. Exactly one of secretString or secretBinary is set,
+ * unless the secret has been sealed, in which case the payload has to be read with open(). A
+ * SecretString can also be held as UTF-8 in secretBinary, see {@link Utf8String}.
+ */
+class CachedSecret implements SecretValue {
+  /**
+   * Fixed cost of an entry on the heap, charged against secret.cache.max.bytes along with the payload.
+   */
+  static final int OVERHEAD = 256;
+
+  final String secretId;
+  final String versionId;
+  final String secretString;
+  final ByteBuffer secretBinary;
+  final long fetchedAt;
+  /**
+   * The time after which the secret may have been rotated, or 0 when unknown.
+   */
+  final long nextRotationAt;
+
+  CachedSecret(String secretId, String versionId, String secretString, ByteBuffer secretBinary, long fetchedAt) {
+    this(secretId, versionId, secretString, secretBinary, fetchedAt, 0L);
+  }
+
+  CachedSecret(String secretId, String versionId, String secretString, ByteBuffer secretBinary, long fetchedAt, long nextRotationAt) {
+    this.secretId = secretId;
+    this.versionId = versionId;
+    this.secretString = secretString;
+    this.secretBinary = secretBinary;
+    this.fetchedAt = fetchedAt;
+    this.nextRotationAt = nextRotationAt;
+  }
+
+  @Override
+  public String secretId() {
+    return this.secretId;
+  }
+
+  @Override
+  public String versionId() {
+    return this.versionId;
+  }
+
+  @Override
+  public boolean isString() {
+    return null != this.secretString;
+  }
+
+  @Override
+  public String secretString() {
+    return this.secretString;
+  }
+
+  @Override
+  public ByteBuffer secretBinary() {
+    return null != this.secretBinary ? this.secretBinary.asReadOnlyBuffer() : null;
+  }
+
+  boolean isExpired(long now, long ttl) {
+    return now - this.fetchedAt >= ttl;
+  }
+
+  /**
+   * Returns a secret whose payload can be read.
+   */
+  CachedSecret open() throws IOException {
+    return this;
+  }
+
+  /**
+   * Returns a duplicate of the payload. Unlike secretBinary() it exposes the backing array of cached
+   * secrets, so heap buffers can be read in place and zeroed.
+   */
+  static ByteBuffer payload(SecretValue secret) {
+    if (secret instanceof CachedSecret) {
+      ByteBuffer payload = ((CachedSecret) secret).secretBinary;
+      return null != payload ? payload.duplicate() : null;
+    }
+    return secret.secretBinary();
+  }
+
+  int payloadSize() {
+    return null != this.secretString ? 2 * this.secretString.length() : this.secretBinary.capacity();
+  }
+
+  int weight() {
+    return OVERHEAD + 2 * (this.secretId.length() + (null != this.versionId ? this.versionId.length() : 0)) + payloadSize();
+  }
+
+  /**
+   * A SecretString held as UTF-8 bytes, so the plaintext can be zeroed once it has been read.
+   */
+  static class Utf8String extends CachedSecret {
+    Utf8String(String secretId, String versionId, ByteBuffer utf8, long fetchedAt, long nextRotationAt) {
+      super(secretId, versionId, null, utf8, fetchedAt, nextRotationAt);
+    }
+
+    @Override
+    public boolean isString() {
+      return true;
+    }
+  }
+}
@@ -0,0 +1,107 @@
+/**
+ * Copyright © 2021 Jeremy Custenborder (jcustenborder@gmail.com)
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.github.jcustenborder.kafka.config.aws;
+
+import com.amazonaws.auth.AWSCredentials;
+
+import java.util.Objects;
+
+/**
+ * Identifies the settings a client was built with. Providers whose settings produce equal keys can
+ * share a client and anything that client has retrieved.
+ */
+class ClientKey {
+  final String region;
+  final String endpoint;
+  final String accessKeyId;
+  final String secretKey;
+  final String roleArn;
+  final String externalId;
+  final String roleSessionName;
+  final int roleSessionDurationSeconds;
+
+  ClientKey(String region, String endpoint, String accessKeyId, String secretKey, String roleArn, String externalId,
+            String roleSessionName, int roleSessionDurationSeconds) {
+    this.region = region;
+    this.endpoint = endpoint;
+    this.accessKeyId = accessKeyId;
+    this.secretKey = secretKey;
+    this.roleArn = roleArn;
+    this.externalId = externalId;
+    this.roleSessionName = roleSessionName;
+    this.roleSessionDurationSeconds = roleSessionDurationSeconds;
+  }
+
+  static ClientKey of(SecretsManagerConfigProviderConfig config) {
+    AWSCredentials credentials = config.credentials;
+    return new ClientKey(
+        config.region,
+        config.endpoint,
+        null != credentials ? credentials.getAWSAccessKeyId() : null,
+        null != credentials ? credentials.getAWSSecretKey() : null,
+        config.assumeRoleArn,
+        config.assumeRoleExternalId,
+        config.assumeRoleSessionName,
+        config.assumeRoleSessionDurationSeconds
+    );
+  }
+
+  @Override
+  public boolean equals(Object o) {
+    if (this == o) {
+      return true;
+    }
+    if (!(o instanceof ClientKey)) {
+      return false;
+    }
+    ClientKey that = (ClientKey) o;
+    return Objects.equals(this.region, that.region) &&
+        Objects.equals(this.endpoint, that.endpoint) &&
+        Objects.equals(this.accessKeyId, that.accessKeyId) &&
+        Objects.equals(this.secretKey, that.secretKey) &&
+        Objects.equals(this.roleArn, that.roleArn) &&
+        Objects.equals(this.externalId, that.externalId) &&
+        Objects.equals(this.roleSessionName, that.roleSessionName) &&
+        this.roleSessionDurationSeconds == that.roleSessionDurationSeconds;
+  }
+
+  @Override
+  public int hashCode() {
+    return Objects.hash(
+        this.region,
+        this.endpoint,
+        this.accessKeyId,
+        this.secretKey,
+        this.roleArn,
+        this.externalId,
+        this.roleSessionName,
+        this.roleSessionDurationSeconds
+    );
+  }
+
+  @Override
+  public String toString() {
+    return String.format(
+        "ClientKey{region='%s', endpoint='%s', accessKeyId='%s', roleArn='%s', roleSessionName='%s', roleSessionDurationSeconds=%s}",
+        this.region,
+        this.endpoint,
+        this.accessKeyId,
+        this.roleArn,
+        this.roleSessionName,
+        this.roleSessionDurationSeconds
+    );
+  }
+}
@@ -0,0 +1,157 @@
+/**
+ * Copyright © 2021 Jeremy Custenborder (jcustenborder@gmail.com)
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.github.jcustenborder.kafka.config.aws;
+
+import com.fasterxml.jackson.databind.util.ByteBufferBackedInputStream;
+import com.github.luben.zstd.ZstdInputStream;
+import org.apache.kafka.common.config.ConfigException;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.util.Arrays;
+import java.util.Base64;
+import java.util.Map;
+import java.util.Set;
+import java.util.zip.GZIPInputStream;
+
+/**
+ * Removes an encoding from the secret before handing it to another codec. The stored buffer is read
+ * in place and the decoded value is passed on without being copied again. Compressed secrets stored as
+ * a string are base64 decoded first, since SecretString cannot hold binary data. Intermediate and
+ * decoded buffers hold plaintext and are zeroed once the wrapped codec has run.
+ */
+class EncodedSecretCodec implements SecretCodec {
+  /**
+   * Upper bound for a decompressed secret, guarding against values that expand without limit.
+   */
+  static final int MAXIMUM_DECODED_SIZE = 16 * 1024 * 1024;
+
+  enum Encoding {
+    BASE64 {
+      @Override
+      ByteBuffer decode(ByteBuffer encoded, SecretValue secret) throws IOException {
+        // String values have already been base64 decoded.
+        return secret.isString() ? encoded : base64(encoded, secret);
+      }
+    },
+    GZIP {
+      @Override
+      ByteBuffer decode(ByteBuffer encoded, SecretValue secret) throws IOException {
+        return decompress(new GZIPInputStream(new ByteBufferBackedInputStream(encoded)), secret);
+      }
+    },
+    ZSTD {
+      @Override
+      ByteBuffer decode(ByteBuffer encoded, SecretValue secret) throws IOException {
+        return decompress(new ZstdInputStream(new ByteBufferBackedInputStream(encoded)), secret);
+      }
+    };
+
+    abstract ByteBuffer decode(ByteBuffer encoded, SecretValue secret) throws IOException;
+
+    static Encoding of(String setting, String spec, String value) {
+      try {
+        return valueOf(value.trim().toUpperCase());
+      } catch (IllegalArgumentException ex) {
+        throw new ConfigException(setting, spec, "Unknown encoding '" + value + "'.");
+      }
+    }
+  }
+
+  final Encoding encoding;
+  final SecretCodec codec;
+
+  EncodedSecretCodec(Encoding encoding, SecretCodec codec) {
+    this.encoding = encoding;
+    this.codec = codec;
+  }
+
+  @Override
+  public Map<String, String> extract(SecretValue secret, Set<String> keys) throws IOException {
+    CachedSecret decoded = decode(secret);
+    try {
+      return this.codec.extract(decoded, keys);
+    } finally {
+      SecretSealer.destroy(decoded);
+    }
+  }
+
+  CachedSecret decode(SecretValue secret) throws IOException {
+    ByteBuffer encoded = CachedSecret.payload(secret);
+    if (secret.isString()) {
+      // Base64 is ASCII, so a string and its UTF-8 bytes decode the same way.
+      ByteBuffer text = null != secret.secretString() ? StandardCharsets.ISO_8859_1.encode(secret.secretString()) : encoded;
+      try {
+        encoded = base64(text, secret);
+      } finally {
+        if (null != secret.secretString()) {
+          zero(text);
+        }
+      }
+    }
+    ByteBuffer decoded = null;
+    try {
+      decoded = this.encoding.decode(encoded, secret);
+      // Only the payload is read by the wrapped codec.
+      return new CachedSecret(secret.secretId(), secret.versionId(), null, decoded, 0L);
+    } finally {
+      // A base64 decoded string is owned here, a binary payload belongs to the cache.
+      if (secret.isString() && decoded != encoded) {
+        zero(encoded);
+      }
+    }
+  }
+
+  static void zero(ByteBuffer buffer) {
+    if (buffer.hasArray()) {
+      Arrays.fill(buffer.array(), (byte) 0);
+    }
+  }
+
+  static ByteBuffer base64(ByteBuffer encoded, SecretValue secret) throws IOException {
+    try {
+      return Base64.getMimeDecoder().decode(encoded);
+    } catch (IllegalArgumentException ex) {
+      throw new IOException(String.format("Secret '%s' is not valid base64.", secret.secretId()), ex);
+    }
+  }
+
+  static ByteBuffer decompress(InputStream inputStream, SecretValue secret) throws IOException {
+    PlaintextOutputStream output = new PlaintextOutputStream(8192);
+    byte[] buffer = new byte[8192];
+    boolean complete = false;
+    try (InputStream input = inputStream) {
+      int read;
+      while ((read = input.read(buffer)) != -1) {
+        if (output.size() + read > MAXIMUM_DECODED_SIZE) {
+          throw new IOException(
+              String.format("Secret '%s' decompresses to more than %s bytes.", secret.secretId(), MAXIMUM_DECODED_SIZE)
+          );
+        }
+        output.write(buffer, 0, read);
+      }
+      complete = true;
+      return output.buffer();
+    } finally {
+      Arrays.fill(buffer, (byte) 0);
+      if (!complete) {
+        output.destroy();
+      }
+    }
+  }
+}
@@ -0,0 +1,248 @@
+/**
+ * Copyright © 2021 Jeremy Custenborder (jcustenborder@gmail.com)
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.github.jcustenborder.kafka.config.aws;
+
+import com.amazonaws.AbortedException;
+import com.amazonaws.AmazonServiceException;
+import com.amazonaws.SdkClientException;
+import com.amazonaws.retry.RetryUtils;
+import com.amazonaws.services.secretsmanager.AWSSecretsManager;
+import com.amazonaws.services.secretsmanager.model.GetSecretValueRequest;
+import com.amazonaws.services.secretsmanager.model.GetSecretValueResult;
+import com.google.common.util.concurrent.ThreadFactoryBuilder;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.io.Closeable;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Comparator;
+import java.util.List;
+import java.util.concurrent.CompletionService;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorCompletionService;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Sends GetSecretValue to the fastest healthy region and, if it has not answered within the hedge
+ * delay, sends the same request to the next region. The first successful response wins and the
+ * outstanding requests are cancelled. Regions that fail with a server or network error are moved to
+ * the back of the line for a while. Errors that would be returned by every region, such as a missing
+ * secret, are returned immediately.
+ */
+class HedgedSecretFetcher implements Closeable {
+  private static final Logger log = LoggerFactory.getLogger(HedgedSecretFetcher.class);
+  static final long DEFAULT_DELAY_MS = 100L;
+  static final long FAILURE_PENALTY_MS = 30000L;
+  static final int MINIMUM_SAMPLES = 10;
+
+  final List<Region> regions;
+  final long hedgeDelayMs;
+  final double hedgePercentile;
+  final ExecutorService executorService;
+
+  HedgedSecretFetcher(List<Region> regions, long hedgeDelayMs, double hedgePercentile) {
+    this.regions = regions;
+    this.hedgeDelayMs = hedgeDelayMs;
+    this.hedgePercentile = hedgePercentile;
+    this.executorService = Executors.newCachedThreadPool(
+        new ThreadFactoryBuilder()
+            .setDaemon(true)
+            .setNameFormat("secrets-manager-hedge-%d")
+            .build()
+    );
+  }
+
+  /**
+   * Regions that have not failed recently come first, ordered by their typical latency. Regions without
+   * latency samples come after measured ones, and ties keep the configured order, so the configured
+   * region is the primary until there is data to say otherwise.
+   */
+  List<Region> candidates() {
+    final long now = System.currentTimeMillis();
+    List<Region> result = new ArrayList<>(this.regions);
+    result.sort(
+        Comparator.comparing((Region region) -> region.failedUntil > now)
+            .thenComparing(region -> 0 == region.latency.count())
+            .thenComparingDouble(region -> region.latency.percentile(50D))
+    );
+    return result;
+  }
+
+  long delay(Region primary) {
+    if (this.hedgeDelayMs > 0) {
+      return this.hedgeDelayMs;
+    }
+    if (primary.latency.count() < MINIMUM_SAMPLES) {
+      return DEFAULT_DELAY_MS;
+    }
+    return Math.max(1L, (long) primary.latency.percentile(this.hedgePercentile));
+  }
+
+  GetSecretValueResult getSecretValue(GetSecretValueRequest request) {
+    final List<Region> candidates = candidates();
+    final long delay = delay(candidates.get(0));
+    final CompletionService<GetSecretValueResult> completionService = new ExecutorCompletionService<>(this.executorService);
+    final List<Future<GetSecretValueResult>> futures = new ArrayList<>(candidates.size());
+    RuntimeException lastException = null;
+    try {
+      futures.add(submit(completionService, candidates.get(0), request));
+      int next = 1;
+      int outstanding = 1;
+      while (outstanding > 0) {
+        Future<GetSecretValueResult> completed = (next < candidates.size()) ?
+            completionService.poll(delay, TimeUnit.MILLISECONDS) :
+            completionService.take();
+        if (null == completed) {
+          Region region = candidates.get(next++);
+          log.debug("getSecretValue() - No response after {} ms. Sending hedged request for '{}' to {}.", delay, request.getSecretId(), region.name);
+          futures.add(submit(completionService, region, request));
+          outstanding++;
+          continue;
+        }
+        outstanding--;
+        try {
+          return completed.get();
+        } catch (ExecutionException ex) {
+          Throwable cause = ex.getCause();
+          if (cause instanceof AmazonServiceException && !isRegional((AmazonServiceException) cause)) {
+            throw (AmazonServiceException) cause;
+          }
+          lastException = (cause instanceof RuntimeException) ?
+              (RuntimeException) cause :
+              new SdkClientException("Exception thrown while retrieving secret", cause);
+        }
+        if (next < candidates.size()) {
+          Region region = candidates.get(next++);
+          log.debug("getSecretValue() - Request failed. Sending request for '{}' to {}.", request.getSecretId(), region.name);
+          futures.add(submit(completionService, region, request));
+          outstanding++;
+        }
+      }
+      throw lastException;
+    } catch (InterruptedException ex) {
+      Thread.currentThread().interrupt();
+      throw new AbortedException(ex);
+    } finally {
+      for (Future<GetSecretValueResult> future : futures) {
+        future.cancel(true);
+      }
+    }
+  }
+
+  static Future<GetSecretValueResult> submit(CompletionService<GetSecretValueResult> completionService, Region region, GetSecretValueRequest request) {
+    return completionService.submit(() -> region.getSecretValue(request));
+  }
+
+  /**
+   * Server errors, throttling and network failures are specific to a region. Anything else, like a
+   * missing secret or access being denied, will fail the same way everywhere.
+   */
+  static boolean isRegional(AmazonServiceException ex) {
+    return ex.getErrorType() == AmazonServiceException.ErrorType.Service ||
+        RetryUtils.isThrottlingException(ex);
+  }
+
+  /**
+   * The losing requests of a hedge are cancelled by interrupting them, which the SDK reports as an
+   * AbortedException. That says nothing about the health of the region.
+   */
+  static boolean isCancellation(RuntimeException ex) {
+    return ex instanceof AbortedException || Thread.currentThread().isInterrupted();
+  }
+
+  @Override
+  public void close() {
+    this.executorService.shutdownNow();
+  }
+
+  static class Region {
+    final String name;
+    final AWSSecretsManager client;
+    final LatencyTracker latency = new LatencyTracker(128);
+    volatile long failedUntil;
+
+    Region(String name, AWSSecretsManager client) {
+      this.name = name;
+      this.client = client;
+    }
+
+    GetSecretValueResult getSecretValue(GetSecretValueRequest request) {
+      final long started = System.nanoTime();
+      try {
+        GetSecretValueResult result = this.client.getSecretValue(request);
+        this.latency.record(TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - started));
+        return result;
+      } catch (AmazonServiceException ex) {
+        if (isRegional(ex)) {
+          markFailed();
+        }
+        throw ex;
+      } catch (RuntimeException ex) {
+        if (isCancellation(ex)) {
+          // A request that lost the hedge took at least this long. Without the sample a slow primary
+          // would keep its old median and stay first.
+          this.latency.record(TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - started));
+          log.trace("getSecretValue() - Request for '{}' to {} was cancelled.", request.getSecretId(), this.name);
+        } else {
+          markFailed();
+        }
+        throw ex;
+      }
+    }
+
+    void markFailed() {
+      log.warn("Region {} failed. Preferring other regions for {} ms.", this.name, FAILURE_PENALTY_MS);
+      this.failedUntil = System.currentTimeMillis() + FAILURE_PENALTY_MS;
+    }
+  }
+
+  /**
+   * Keeps the most recent latency samples for a region.
+   */
+  static class LatencyTracker {
+    final long[] samples;
+    int count;
+    int position;
+
+    LatencyTracker(int size) {
+      this.samples = new long[size];
+    }
+
+    synchronized void record(long latencyMs) {
+      this.samples[this.position] = latencyMs;
+      this.position = (this.position + 1) % this.samples.length;
+      this.count = Math.min(this.count + 1, this.samples.length);
+    }
+
+    synchronized int count() {
+      return this.count;
+    }
+
+    synchronized double percentile(double percentile) {
+      if (0 == this.count) {
+        return 0D;
+      }
+      long[] sorted = Arrays.copyOf(this.samples, this.count);
+      Arrays.sort(sorted);
+      int index = (int) Math.ceil(percentile / 100D * sorted.length) - 1;
+      return sorted[Math.max(0, Math.min(sorted.length - 1, index))];
+    }
+  }
+}
@@ -0,0 +1,186 @@
+/**
+ * Copyright © 2021 Jeremy Custenborder (jcustenborder@gmail.com)
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.github.jcustenborder.kafka.config.aws;
+
+import com.fasterxml.jackson.core.JsonParser;
+import com.fasterxml.jackson.core.JsonPointer;
+import com.fasterxml.jackson.core.JsonToken;
+import com.fasterxml.jackson.databind.JsonNode;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.fasterxml.jackson.databind.util.ByteBufferBackedInputStream;
+import org.apache.kafka.common.config.ConfigException;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.Set;
+
+/**
+ * Reads the requested keys out of a JSON secret without building a tree for the whole document.
+ * Parsing stops as soon as every requested key has been found. Keys starting with `/` are treated as
+ * JSON pointers into nested objects and arrays, all other keys are top level field names. Scalars are
+ * returned as their text, objects and arrays as JSON.
+ */
+class JsonSecretExtractor implements SecretCodec {
+  final ObjectMapper mapper;
+
+  JsonSecretExtractor(ObjectMapper mapper) {
+    this.mapper = mapper;
+  }
+
+  @Override
+  public Map<String, String> extract(SecretValue secret, Set<String> keys) throws IOException {
+    Map<JsonPointer, String> requested = (null == keys || keys.isEmpty()) ? null : pointers(secret.secretId(), keys);
+    try (JsonParser parser = createParser(secret)) {
+      if (JsonToken.START_OBJECT != parser.nextToken()) {
+        throw new IOException("Secret value must be a JSON object.");
+      }
+      return (null == requested) ? extractAll(parser) : extract(parser, keys, requested);
+    }
+  }
+
+  static Map<JsonPointer, String> pointers(String secretId, Set<String> keys) {
+    Map<JsonPointer, String> requested = new HashMap<>(keys.size());
+    for (String key : keys) {
+      String expression = key.startsWith("/") ? key : "/" + key.replace("~", "~0").replace("/", "~1");
+      try {
+        requested.put(JsonPointer.compile(expression), key);
+      } catch (IllegalArgumentException ex) {
+        ConfigException configException = new ConfigException(
+            String.format("Key '%s' requested from secret '%s' is not a valid JSON pointer.", key, secretId)
+        );
+        configException.initCause(ex);
+        throw configException;
+      }
+    }
+    return requested;
+  }
+
+  /**
+   * Binary secrets are read in place. Heap buffers are handed to the parser as a slice of their
+   * backing array, anything else is streamed from a duplicate so the cached buffer is never modified.
+   */
+  JsonParser createParser(SecretValue secret) throws IOException {
+    if (null != secret.secretString()) {
+      return this.mapper.getFactory().createParser(secret.secretString());
+    }
+    ByteBuffer buffer = CachedSecret.payload(secret);
+    if (buffer.hasArray()) {
+      return this.mapper.getFactory().createParser(
+          buffer.array(),
+          buffer.arrayOffset() + buffer.position(),
+          buffer.remaining()
+      );
+    }
+    return this.mapper.getFactory().createParser(new ByteBufferBackedInputStream(buffer));
+  }
+
+  Map<String, String> extractAll(JsonParser parser) throws IOException {
+    Map<String, String> results = new LinkedHashMap<>();
+    while (JsonToken.FIELD_NAME == parser.nextToken()) {
+      String name = parser.getCurrentName();
+      parser.nextToken();
+      String value = render(parser);
+      if (null != value) {
+        results.put(name, value);
+      }
+    }
+    return results;
+  }
+
+  Map<String, String> extract(JsonParser parser, Set<String> keys, Map<JsonPointer, String> requested) throws IOException {
+    Map<String, String> found = new HashMap<>(keys.size());
+    JsonToken token;
+    while (!requested.isEmpty() && null != (token = parser.nextToken())) {
+      if (JsonToken.FIELD_NAME == token || token.isStructEnd()) {
+        continue;
+      }
+      JsonPointer pointer = parser.getParsingContext().pathAsPointer();
+      String key = requested.remove(pointer);
+      if (null == key) {
+        if (token.isStructStart() && !containsRequested(pointer, requested.keySet())) {
+          parser.skipChildren();
+        }
+      } else if (token.isStructStart()) {
+        JsonNode node = this.mapper.readTree(parser);
+        put(found, key, node);
+        resolveNested(pointer, node, requested, found);
+      } else if (JsonToken.VALUE_NULL != token) {
+        found.put(key, parser.getText());
+      }
+    }
+
+    Map<String, String> results = new LinkedHashMap<>(found.size());
+    for (String key : keys) {
+      String value = found.get(key);
+      if (null != value) {
+        results.put(key, value);
+      }
+    }
+    return results;
+  }
+
+  static boolean containsRequested(JsonPointer pointer, Set<JsonPointer> requested) {
+    String prefix = pointer.toString() + "/";
+    for (JsonPointer candidate : requested) {
+      if (candidate.toString().startsWith(prefix)) {
+        return true;
+      }
+    }
+    return false;
+  }
+
+  /**
+   * Requested pointers inside an object or array that was itself requested are resolved from the
+   * subtree, since the parser has already moved past it.
+   */
+  void resolveNested(JsonPointer pointer, JsonNode node, Map<JsonPointer, String> requested, Map<String, String> found) throws IOException {
+    String prefix = pointer.toString();
+    Iterator<Map.Entry<JsonPointer, String>> iterator = requested.entrySet().iterator();
+    while (iterator.hasNext()) {
+      Map.Entry<JsonPointer, String> entry = iterator.next();
+      String candidate = entry.getKey().toString();
+      if (candidate.startsWith(prefix + "/")) {
+        put(found, entry.getValue(), node.at(candidate.substring(prefix.length())));
+        iterator.remove();
+      }
+    }
+  }
+
+  void put(Map<String, String> found, String key, JsonNode node) throws IOException {
+    if (node.isMissingNode() || node.isNull()) {
+      return;
+    }
+    found.put(key, node.isValueNode() ? node.asText() : this.mapper.writeValueAsString(node));
+  }
+
+  /**
+   * Returns the text of the current value, consuming it when it is an object or array.
+   */
+  String render(JsonParser parser) throws IOException {
+    JsonToken token = parser.currentToken();
+    if (JsonToken.VALUE_NULL == token) {
+      return null;
+    }
+    if (token.isStructStart()) {
+      return this.mapper.writeValueAsString(this.mapper.readTree(parser));
+    }
+    return parser.getText();
+  }
+}
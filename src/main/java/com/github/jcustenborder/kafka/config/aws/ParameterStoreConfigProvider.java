@@ -0,0 +1,187 @@
+/**
+ * Copyright © 2021 Jeremy Custenborder (jcustenborder@gmail.com)
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.github.jcustenborder.kafka.config.aws;
+
+import com.amazonaws.AmazonServiceException;
+import com.amazonaws.services.simplesystemsmanagement.AWSSimpleSystemsManagement;
+import com.amazonaws.services.simplesystemsmanagement.model.GetParametersByPathRequest;
+import com.amazonaws.services.simplesystemsmanagement.model.GetParametersByPathResult;
+import com.amazonaws.services.simplesystemsmanagement.model.Parameter;
+import com.github.jcustenborder.kafka.connect.utils.config.Description;
+import com.github.jcustenborder.kafka.connect.utils.config.DocumentationSection;
+import com.github.jcustenborder.kafka.connect.utils.config.DocumentationSections;
+import com.github.jcustenborder.kafka.connect.utils.config.DocumentationTip;
+import com.google.common.cache.Cache;
+import com.google.common.cache.CacheBuilder;
+import com.google.common.util.concurrent.UncheckedExecutionException;
+import org.apache.kafka.common.config.ConfigData;
+import org.apache.kafka.common.config.ConfigDef;
+import org.apache.kafka.common.config.ConfigException;
+import org.apache.kafka.common.config.provider.ConfigProvider;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.io.IOException;
+import java.util.Collections;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.TimeUnit;
+
+@Description("This config provider is used to retrieve parameters from AWS Systems Manager Parameter Store.")
+@DocumentationTip("Config providers can be used with anything that supports the AbstractConfig base class that is shipped with Apache Kafka.")
+@DocumentationSections(
+    sections = {
+        @DocumentationSection(title = "Parameter Hierarchy", text = "The path requested from the config provider is treated as a " +
+            "parameter hierarchy. Every parameter under the hierarchy is retrieved with GetParametersByPath, ten parameters " +
+            "per call, and the result is cached as a whole. The key for each parameter is its name relative to the hierarchy. " +
+            "Given the parameters `/staging/connectors/my-connector/username` and `/staging/connectors/my-connector/password`:\n" +
+            "\n" +
+            ".. code-block:: properties\n" +
+            "    :caption: Example Connector Config\n" +
+            "\n" +
+            "    username=${parameterStore:connectors/my-connector:username}\n" +
+            "    password=${parameterStore:connectors/my-connector:password}\n" +
+            "")
+    }
+)
+public class ParameterStoreConfigProvider implements ConfigProvider {
+  private static final Logger log = LoggerFactory.getLogger(ParameterStoreConfigProvider.class);
+  static final int MAX_RESULTS = 10;
+  ParameterStoreConfigProviderConfig config;
+  ParameterStoreFactory parameterStoreFactory = new ParameterStoreFactoryImpl();
+  AWSSimpleSystemsManagement parameterStore;
+  Cache<String, Map<String, String>> cache;
+
+  @Override
+  public ConfigData get(String path) {
+    return get(path, Collections.emptySet());
+  }
+
+  @Override
+  public ConfigData get(String p, Set<String> keys) {
+    log.trace("get() - path = '{}' keys = '{}'", p, keys);
+    final String hierarchy = hierarchy(p);
+    final Map<String, String> parameters;
+    try {
+      parameters = this.cache.get(hierarchy, () -> fetch(hierarchy));
+    } catch (ExecutionException | UncheckedExecutionException ex) {
+      if (ex.getCause() instanceof ConfigException) {
+        throw (ConfigException) ex.getCause();
+      }
+      throw createException(ex.getCause(), "Exception thrown while reading parameters under '%s'", hierarchy);
+    }
+
+    if (null == keys || keys.isEmpty()) {
+      return new ConfigData(parameters, this.config.minimumParameterTTL);
+    }
+    Map<String, String> results = new LinkedHashMap<>(keys.size());
+    for (String key : keys) {
+      String value = parameters.get(key);
+      if (null != value) {
+        results.put(key, value);
+      }
+    }
+    return new ConfigData(results, this.config.minimumParameterTTL);
+  }
+
+  /**
+   * Returns the absolute parameter hierarchy for the path, for example `/staging/connectors/foo`.
+   */
+  String hierarchy(String p) {
+    StringBuilder builder = new StringBuilder();
+    for (String part : new String[]{this.config.prefix, p}) {
+      for (String segment : part.split("/")) {
+        if (!segment.isEmpty()) {
+          builder.append('/').append(segment);
+        }
+      }
+    }
+    return builder.length() == 0 ? "/" : builder.toString();
+  }
+
+  /**
+   * Retrieves every parameter under the hierarchy, following NextToken until all pages are read.
+   */
+  Map<String, String> fetch(String hierarchy) {
+    final String parent = hierarchy.endsWith("/") ? hierarchy : hierarchy + "/";
+    Map<String, String> results = new LinkedHashMap<>();
+    GetParametersByPathRequest request = new GetParametersByPathRequest()
+        .withPath(hierarchy)
+        .withRecursive(this.config.recursive)
+        .withWithDecryption(this.config.decryptionEnabled)
+        .withMaxResults(MAX_RESULTS);
+    String nextToken = null;
+    int requests = 0;
+    do {
+      final GetParametersByPathResult result;
+      try {
+        result = this.parameterStore.getParametersByPath(request.withNextToken(nextToken));
+      } catch (AmazonServiceException ex) {
+        throw createException(ex, "Exception thrown while reading parameters under '%s'", hierarchy);
+      }
+      requests++;
+      for (Parameter parameter : result.getParameters()) {
+        String name = parameter.getName();
+        results.put(name.startsWith(parent) ? name.substring(parent.length()) : name, parameter.getValue());
+      }
+      nextToken = result.getNextToken();
+    } while (null != nextToken);
+    log.debug("fetch() - Retrieved {} parameter(s) under '{}' with {} request(s)", results.size(), hierarchy, requests);
+
+    if (results.isEmpty()) {
+      throw new ConfigException(String.format("Could not find any parameters under '%s'", hierarchy));
+    }
+    return Collections.unmodifiableMap(results);
+  }
+
+  ConfigException createException(Throwable cause, String message, Object... args) {
+    String exceptionMessage = String.format(message, args);
+    ConfigException configException = new ConfigException(exceptionMessage);
+    configException.initCause(cause);
+    return configException;
+  }
+
+  @Override
+  public void close() throws IOException {
+    if (null != this.parameterStore) {
+      this.parameterStoreFactory.release(this.parameterStore);
+      this.parameterStore = null;
+    }
+  }
+
+  @Override
+  public void configure(Map<String, ?> settings) {
+    if (null != this.config) {
+      log.debug("configure() - Releasing resources from the previous configuration.");
+      try {
+        close();
+      } catch (IOException ex) {
+        log.warn("configure() - Exception thrown while releasing the previous configuration.", ex);
+      }
+    }
+    this.config = new ParameterStoreConfigProviderConfig(settings);
+    this.parameterStore = this.parameterStoreFactory.create(this.config);
+    this.cache = CacheBuilder.newBuilder()
+        .expireAfterWrite(this.config.minimumParameterTTL, TimeUnit.MILLISECONDS)
+        .build();
+  }
+
+  public static ConfigDef config() {
+    return ParameterStoreConfigProviderConfig.config();
+  }
+}
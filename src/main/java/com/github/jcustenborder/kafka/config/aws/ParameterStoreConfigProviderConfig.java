@@ -0,0 +1,144 @@
+/**
+ * Copyright © 2021 Jeremy Custenborder (jcustenborder@gmail.com)
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.github.jcustenborder.kafka.config.aws;
+
+import com.github.jcustenborder.kafka.connect.utils.config.ConfigKeyBuilder;
+import org.apache.kafka.common.config.AbstractConfig;
+import org.apache.kafka.common.config.ConfigDef;
+
+import java.time.Duration;
+import java.util.Arrays;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+class ParameterStoreConfigProviderConfig extends AbstractConfig {
+  public static final String REGION_CONFIG = SecretsManagerConfigProviderConfig.REGION_CONFIG;
+  static final String REGION_DOC = SecretsManagerConfigProviderConfig.REGION_DOC;
+
+  public static final String ENDPOINT_CONFIG = "ssm.endpoint";
+  static final String ENDPOINT_DOC = "Overrides the endpoint of the Systems Manager client. For example a VPC endpoint. " +
+      "When set, `" + REGION_CONFIG + "` is only used to sign requests.";
+
+  public static final String PREFIX_CONFIG = "parameter.prefix";
+  static final String PREFIX_DOC = "Sets a prefix that will be added to all paths. For example you can use `staging` or `production` " +
+      "and all of the calls to Parameter Store will be prefixed with that path. This allows the same configuration settings to be used across " +
+      "multiple environments.";
+
+  public static final String MIN_TTL_MS_CONFIG = "parameter.ttl.ms";
+  static final String MIN_TTL_MS_DOC = "The minimum amount of time that a parameter hierarchy should be used. " +
+      "After this TTL has expired Parameter Store will be queried again in case there is an updated configuration.";
+
+  public static final String RECURSIVE_CONFIG = "parameter.recursive";
+  static final String RECURSIVE_DOC = "Flag to determine if parameters nested below the requested hierarchy are returned as well. " +
+      "Nested parameters are returned with their path relative to the requested hierarchy as the key, for example `database/password`.";
+
+  public static final String DECRYPTION_ENABLED_CONFIG = "parameter.decryption.enabled";
+  static final String DECRYPTION_ENABLED_DOC = "Flag to determine if SecureString parameters are decrypted.";
+
+  public static final String AWS_ACCESS_KEY_ID_CONFIG = SecretsManagerConfigProviderConfig.AWS_ACCESS_KEY_ID_CONFIG;
+  public static final String AWS_SECRET_KEY_CONFIG = SecretsManagerConfigProviderConfig.AWS_SECRET_KEY_CONFIG;
+  public static final String ASSUME_ROLE_ARN_CONFIG = SecretsManagerConfigProviderConfig.ASSUME_ROLE_ARN_CONFIG;
+
+  /**
+   * Region and credential settings, defined exactly as they are for the Secrets Manager provider.
+   */
+  static final List<String> CLIENT_CONFIGS = Arrays.asList(
+      AWS_ACCESS_KEY_ID_CONFIG,
+      AWS_SECRET_KEY_CONFIG,
+      ASSUME_ROLE_ARN_CONFIG,
+      SecretsManagerConfigProviderConfig.ASSUME_ROLE_EXTERNAL_ID_CONFIG,
+      SecretsManagerConfigProviderConfig.ASSUME_ROLE_SESSION_NAME_CONFIG,
+      SecretsManagerConfigProviderConfig.ASSUME_ROLE_SESSION_DURATION_SECONDS_CONFIG
+  );
+
+  public final String region;
+  public final String endpoint;
+  public final String prefix;
+  public final long minimumParameterTTL;
+  public final boolean recursive;
+  public final boolean decryptionEnabled;
+  /**
+   * The region, endpoint and credential settings as a Secrets Manager config so the client is built
+   * with the same credential handling, including shared assume role sessions.
+   */
+  public final SecretsManagerConfigProviderConfig client;
+
+  public ParameterStoreConfigProviderConfig(Map<String, ?> settings) {
+    super(config(), settings);
+    this.region = getString(REGION_CONFIG);
+    this.endpoint = getString(ENDPOINT_CONFIG);
+    this.prefix = getString(PREFIX_CONFIG);
+    this.minimumParameterTTL = getLong(MIN_TTL_MS_CONFIG);
+    this.recursive = getBoolean(RECURSIVE_CONFIG);
+    this.decryptionEnabled = getBoolean(DECRYPTION_ENABLED_CONFIG);
+
+    Map<String, Object> client = new LinkedHashMap<>();
+    for (String name : CLIENT_CONFIGS) {
+      client.put(name, get(name));
+    }
+    client.put(SecretsManagerConfigProviderConfig.REGION_CONFIG, this.region);
+    client.put(SecretsManagerConfigProviderConfig.ENDPOINT_CONFIG, this.endpoint);
+    this.client = new SecretsManagerConfigProviderConfig(client);
+  }
+
+  public static ConfigDef config() {
+    ConfigDef result = new ConfigDef();
+    Map<String, ConfigDef.ConfigKey> secretsManagerKeys = SecretsManagerConfigProviderConfig.config().configKeys();
+    for (String name : CLIENT_CONFIGS) {
+      result.define(secretsManagerKeys.get(name));
+    }
+    return result
+        .define(
+            ConfigKeyBuilder.of(REGION_CONFIG, ConfigDef.Type.STRING)
+                .documentation(REGION_DOC)
+                .importance(ConfigDef.Importance.HIGH)
+                .defaultValue("")
+                .build()
+        ).define(
+            ConfigKeyBuilder.of(ENDPOINT_CONFIG, ConfigDef.Type.STRING)
+                .documentation(ENDPOINT_DOC)
+                .importance(ConfigDef.Importance.LOW)
+                .defaultValue("")
+                .build()
+        ).define(
+            ConfigKeyBuilder.of(PREFIX_CONFIG, ConfigDef.Type.STRING)
+                .documentation(PREFIX_DOC)
+                .importance(ConfigDef.Importance.LOW)
+                .defaultValue("")
+                .build()
+        ).define(
+            ConfigKeyBuilder.of(MIN_TTL_MS_CONFIG, ConfigDef.Type.LONG)
+                .documentation(MIN_TTL_MS_DOC)
+                .importance(ConfigDef.Importance.LOW)
+                .defaultValue(Duration.ofMinutes(5L).toMillis())
+                .validator(ConfigDef.Range.atLeast(1000L))
+                .build()
+        ).define(
+            ConfigKeyBuilder.of(RECURSIVE_CONFIG, ConfigDef.Type.BOOLEAN)
+                .documentation(RECURSIVE_DOC)
+                .importance(ConfigDef.Importance.LOW)
+                .defaultValue(true)
+                .build()
+        ).define(
+            ConfigKeyBuilder.of(DECRYPTION_ENABLED_CONFIG, ConfigDef.Type.BOOLEAN)
+                .documentation(DECRYPTION_ENABLED_DOC)
+                .importance(ConfigDef.Importance.LOW)
+                .defaultValue(true)
+                .build()
+        );
+  }
+}
@@ -0,0 +1,56 @@
+/**
+ * Copyright © 2021 Jeremy Custenborder (jcustenborder@gmail.com)
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.github.jcustenborder.kafka.config.aws;
+
+import com.amazonaws.auth.AWSCredentialsProvider;
+import com.amazonaws.services.simplesystemsmanagement.AWSSimpleSystemsManagement;
+import com.amazonaws.services.simplesystemsmanagement.AWSSimpleSystemsManagementClientBuilder;
+
+import java.util.Collections;
+import java.util.IdentityHashMap;
+import java.util.Map;
+
+/**
+ * Builds Systems Manager clients the same way Secrets Manager clients are built, including the
+ * assume role sessions shared through AssumeRoleCredentials.
+ */
+class ParameterStoreFactoryImpl implements ParameterStoreFactory {
+  final Map<AWSSimpleSystemsManagement, AWSCredentialsProvider> credentialsProviders = Collections.synchronizedMap(new IdentityHashMap<>());
+
+  @Override
+  public AWSSimpleSystemsManagement create(ParameterStoreConfigProviderConfig config) {
+    AWSCredentialsProvider credentialsProvider = AssumeRoleCredentials.INSTANCE.acquire(config.client);
+    AWSSimpleSystemsManagement parameterStore = SecretsManagerFactoryImpl.configure(
+        AWSSimpleSystemsManagementClientBuilder.standard(),
+        config.client.region,
+        config.client.endpoint,
+        credentialsProvider
+    ).build();
+    if (null != credentialsProvider) {
+      this.credentialsProviders.put(parameterStore, credentialsProvider);
+    }
+    return parameterStore;
+  }
+
+  @Override
+  public void release(AWSSimpleSystemsManagement parameterStore) {
+    parameterStore.shutdown();
+    AWSCredentialsProvider credentialsProvider = this.credentialsProviders.remove(parameterStore);
+    if (null != credentialsProvider) {
+      AssumeRoleCredentials.INSTANCE.release(credentialsProvider);
+    }
+  }
+}
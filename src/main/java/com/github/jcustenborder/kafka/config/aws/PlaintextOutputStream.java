@@ -0,0 +1,65 @@
+/**
+ * Copyright © 2021 Jeremy Custenborder (jcustenborder@gmail.com)
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.github.jcustenborder.kafka.config.aws;
+
+import java.io.ByteArrayOutputStream;
+import java.nio.ByteBuffer;
+import java.util.Arrays;
+
+/**
+ * Collects plaintext secrets in memory. Arrays that are outgrown are zeroed rather than left for the
+ * garbage collector, the written bytes can be read without the copy made by toByteArray(), and
+ * destroy() zeroes everything that was written.
+ */
+class PlaintextOutputStream extends ByteArrayOutputStream {
+  PlaintextOutputStream(int size) {
+    super(size);
+  }
+
+  @Override
+  public synchronized void write(int b) {
+    ensureCapacity(this.count + 1);
+    super.write(b);
+  }
+
+  @Override
+  public synchronized void write(byte[] b, int off, int len) {
+    ensureCapacity(this.count + Math.max(0, len));
+    super.write(b, off, len);
+  }
+
+  void ensureCapacity(int minimum) {
+    if (minimum <= this.buf.length) {
+      return;
+    }
+    int size = (int) Math.min(Integer.MAX_VALUE - 8, Math.max(minimum, 2L * this.buf.length));
+    byte[] grown = Arrays.copyOf(this.buf, size);
+    Arrays.fill(this.buf, (byte) 0);
+    this.buf = grown;
+  }
+
+  /**
+   * Returns the written bytes without copying them.
+   */
+  synchronized ByteBuffer buffer() {
+    return ByteBuffer.wrap(this.buf, 0, this.count);
+  }
+
+  synchronized void destroy() {
+    Arrays.fill(this.buf, (byte) 0);
+    this.count = 0;
+  }
+}
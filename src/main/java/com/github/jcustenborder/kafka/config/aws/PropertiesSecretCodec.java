@@ -0,0 +1,58 @@
+/**
+ * Copyright © 2021 Jeremy Custenborder (jcustenborder@gmail.com)
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.github.jcustenborder.kafka.config.aws;
+
+import com.fasterxml.jackson.databind.util.ByteBufferBackedInputStream;
+
+import java.io.IOException;
+import java.io.InputStreamReader;
+import java.io.Reader;
+import java.io.StringReader;
+import java.nio.charset.StandardCharsets;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.Properties;
+import java.util.Set;
+import java.util.TreeSet;
+
+/**
+ * Reads secrets stored in the Java properties format. Binary secrets are read as UTF-8.
+ */
+class PropertiesSecretCodec implements SecretCodec {
+  @Override
+  public Map<String, String> extract(SecretValue secret, Set<String> keys) throws IOException {
+    Properties properties = new Properties();
+    try (Reader reader = createReader(secret)) {
+      properties.load(reader);
+    }
+    Set<String> names = (null == keys || keys.isEmpty()) ? new TreeSet<>(properties.stringPropertyNames()) : keys;
+    Map<String, String> results = new LinkedHashMap<>(names.size());
+    for (String name : names) {
+      String value = properties.getProperty(name);
+      if (null != value) {
+        results.put(name, value);
+      }
+    }
+    return results;
+  }
+
+  static Reader createReader(SecretValue secret) {
+    if (null != secret.secretString()) {
+      return new StringReader(secret.secretString());
+    }
+    return new InputStreamReader(new ByteBufferBackedInputStream(secret.secretBinary()), StandardCharsets.UTF_8);
+  }
+}
@@ -0,0 +1,40 @@
+/**
+ * Copyright © 2021 Jeremy Custenborder (jcustenborder@gmail.com)
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.github.jcustenborder.kafka.config.aws;
+
+import java.nio.charset.StandardCharsets;
+import java.util.Collections;
+import java.util.Map;
+import java.util.Set;
+
+/**
+ * Returns the whole secret as the single key `value`. Binary secrets are read as UTF-8, which suits
+ * PEM encoded certificates and keys.
+ */
+class RawSecretCodec implements SecretCodec {
+  static final String KEY = "value";
+
+  @Override
+  public Map<String, String> extract(SecretValue secret, Set<String> keys) {
+    if (null != keys && !keys.isEmpty() && !keys.contains(KEY)) {
+      return Collections.emptyMap();
+    }
+    String value = null != secret.secretString() ?
+        secret.secretString() :
+        StandardCharsets.UTF_8.decode(secret.secretBinary()).toString();
+    return Collections.singletonMap(KEY, value);
+  }
+}
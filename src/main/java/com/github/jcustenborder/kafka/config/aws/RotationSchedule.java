@@ -0,0 +1,71 @@
+/**
+ * Copyright © 2021 Jeremy Custenborder (jcustenborder@gmail.com)
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.github.jcustenborder.kafka.config.aws;
+
+import com.amazonaws.services.secretsmanager.model.DescribeSecretResult;
+import com.amazonaws.services.secretsmanager.model.RotationRulesType;
+
+import java.util.concurrent.TimeUnit;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+
+/**
+ * Works out when a rotated secret could next have a new value. This is the end of the next rotation
+ * window: NextRotationDate, or LastRotatedDate plus AutomaticallyAfterDays when the next date is not
+ * reported, plus the window duration from the rotation rules.
+ */
+class RotationSchedule {
+  static final Pattern DURATION_PATTERN = Pattern.compile("^(\\d+)([hd])$");
+
+  private RotationSchedule() {
+  }
+
+  /**
+   * Returns the time in milliseconds after which the secret may have been rotated, or 0 when the
+   * secret is not rotated or the schedule cannot be determined.
+   */
+  static long nextRotation(DescribeSecretResult result) {
+    if (!Boolean.TRUE.equals(result.getRotationEnabled())) {
+      return 0L;
+    }
+    RotationRulesType rules = result.getRotationRules();
+    final long next;
+    if (null != result.getNextRotationDate()) {
+      next = result.getNextRotationDate().getTime();
+    } else if (null != result.getLastRotatedDate() && null != rules && null != rules.getAutomaticallyAfterDays()) {
+      next = result.getLastRotatedDate().getTime() + TimeUnit.DAYS.toMillis(rules.getAutomaticallyAfterDays());
+    } else {
+      return 0L;
+    }
+    return next + (null != rules ? windowMs(rules.getDuration()) : 0L);
+  }
+
+  /**
+   * Parses the rotation window duration, which Secrets Manager expresses in hours such as `3h`, or
+   * days such as `1d`.
+   */
+  static long windowMs(String duration) {
+    if (null == duration) {
+      return 0L;
+    }
+    Matcher matcher = DURATION_PATTERN.matcher(duration.trim());
+    if (!matcher.matches()) {
+      return 0L;
+    }
+    long value = Long.parseLong(matcher.group(1));
+    return "d".equals(matcher.group(2)) ? TimeUnit.DAYS.toMillis(value) : TimeUnit.HOURS.toMillis(value);
+  }
+}
@@ -0,0 +1,299 @@
+/**
+ * Copyright © 2021 Jeremy Custenborder (jcustenborder@gmail.com)
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.github.jcustenborder.kafka.config.aws;
+
+import com.google.common.base.Throwables;
+import com.google.common.cache.Cache;
+import com.google.common.cache.CacheBuilder;
+import com.google.common.util.concurrent.ThreadFactoryBuilder;
+import com.google.common.util.concurrent.UncheckedExecutionException;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.Objects;
+import java.util.Set;
+import java.util.concurrent.Callable;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.function.Supplier;
+
+/**
+ * Process wide cache of parsed secrets. Entries are keyed by the client settings and the resolved
+ * secret id so that providers configured with different credentials never see each others secrets.
+ * Concurrent misses for the same key are collapsed into a single load.
+ * <p>
+ * The cache is bounded by the bytes held by its entries rather than by their count. When encryption
+ * is enabled, secrets are sealed before they are cached so payloads are kept encrypted and off heap.
+ */
+class SecretCache {
+  private static final Logger log = LoggerFactory.getLogger(SecretCache.class);
+  static final long DEFAULT_MAXIMUM_BYTES = 64L * 1024L * 1024L;
+  static SecretCache instance;
+
+  private final Cache<Key, CachedSecret> cache;
+  private final SecretSealer sealer;
+  private final Set<Key> refreshing = ConcurrentHashMap.newKeySet();
+  private final ConcurrentHashMap<Key, CompletableFuture<CachedSecret>> loading = new ConcurrentHashMap<>();
+  private final Set<List<Object>> prefetched = ConcurrentHashMap.newKeySet();
+  private final ThreadPoolExecutor executorService;
+
+  SecretCache(long maximumBytes, boolean encrypted) {
+    // Guava splits the weight between its segments. A single segment lets any secret that fits within
+    // the budget be cached, rather than only those below budget / concurrency level.
+    this.cache = CacheBuilder.newBuilder()
+        .concurrencyLevel(1)
+        .maximumWeight(maximumBytes)
+        .weigher((Key key, CachedSecret secret) -> secret.weight())
+        .build();
+    this.sealer = encrypted ? new SecretSealer() : null;
+    this.executorService = new ThreadPoolExecutor(
+        4,
+        4,
+        60L,
+        TimeUnit.SECONDS,
+        new LinkedBlockingQueue<>(),
+        new ThreadFactoryBuilder()
+            .setDaemon(true)
+            .setNameFormat("secrets-manager-revalidate-%d")
+            .build()
+    );
+    this.executorService.allowCoreThreadTimeOut(true);
+  }
+
+  /**
+   * Returns the cache shared by every provider in the JVM. The first provider to be configured
+   * determines the byte budget and whether payloads are encrypted.
+   */
+  static synchronized SecretCache of(SecretsManagerConfigProviderConfig config) {
+    if (null == instance) {
+      log.debug("of() - Creating cache with a budget of {} byte(s)", config.cacheMaxBytes);
+      instance = new SecretCache(config.cacheMaxBytes, config.cacheEncrypted);
+    }
+    return instance;
+  }
+
+  /**
+   * Returns the secret in the form it should be cached, encrypted when encryption is enabled.
+   */
+  CachedSecret seal(CachedSecret secret) {
+    return null != this.sealer ? this.sealer.seal(secret) : secret;
+  }
+
+  /**
+   * Returns the cached secret if it is younger than the ttl, otherwise loads it. Only one load per
+   * key is in flight at any time, other callers wait for and share its result.
+   * <p>
+   * When maxStale is greater than zero, an expired secret that is younger than ttl + maxStale is
+   * returned immediately and reloaded in the background. If the reload fails the expired secret keeps
+   * being served until it is older than ttl + maxStale, after which callers block on a load again.
+   */
+  CachedSecret get(ClientKey client, String secretId, long ttl, long maxStale, Callable<CachedSecret> loader) throws IOException {
+    return get(client, secretId, ttl, maxStale, () -> { }, loader);
+  }
+
+  /**
+   * Same as above, calling onMiss when the caller has to load the secret or wait for another caller's
+   * load to complete.
+   */
+  CachedSecret get(ClientKey client, String secretId, long ttl, long maxStale, Runnable onMiss, Callable<CachedSecret> loader) throws IOException {
+    final Key key = new Key(client, secretId);
+    CachedSecret secret = this.cache.getIfPresent(key);
+    final long now = System.currentTimeMillis();
+    if (null != secret && !secret.isExpired(now, ttl)) {
+      return secret;
+    }
+    if (null != secret && maxStale > 0 && !secret.isExpired(now, ttl + maxStale)) {
+      revalidate(key, loader);
+      return secret;
+    }
+    if (null != secret) {
+      this.cache.asMap().remove(key, secret);
+    }
+    onMiss.run();
+    try {
+      return this.cache.get(key, loader);
+    } catch (ExecutionException | UncheckedExecutionException ex) {
+      Throwable cause = ex.getCause();
+      Throwables.throwIfInstanceOf(cause, IOException.class);
+      Throwables.throwIfUnchecked(cause);
+      throw new UncheckedExecutionException(cause);
+    }
+  }
+
+  /**
+   * Asynchronous version of get(). Concurrent misses for the same key share one load, and no thread
+   * waits for the load to complete.
+   */
+  CompletableFuture<CachedSecret> getAsync(ClientKey client, String secretId, long ttl, long maxStale,
+                                           Supplier<CompletableFuture<CachedSecret>> loader) {
+    final Key key = new Key(client, secretId);
+    CachedSecret secret = this.cache.getIfPresent(key);
+    final long now = System.currentTimeMillis();
+    if (null != secret && !secret.isExpired(now, ttl)) {
+      return CompletableFuture.completedFuture(secret);
+    }
+    if (null != secret && maxStale > 0 && !secret.isExpired(now, ttl + maxStale)) {
+      revalidateAsync(key, loader);
+      return CompletableFuture.completedFuture(secret);
+    }
+    if (null != secret) {
+      this.cache.asMap().remove(key, secret);
+    }
+    CompletableFuture<CachedSecret> result = new CompletableFuture<>();
+    CompletableFuture<CachedSecret> existing = this.loading.putIfAbsent(key, result);
+    if (null != existing) {
+      return existing;
+    }
+    load(loader).whenComplete((loaded, error) -> {
+      if (null == error) {
+        this.cache.put(key, loaded);
+      }
+      this.loading.remove(key, result);
+      if (null == error) {
+        result.complete(loaded);
+      } else {
+        result.completeExceptionally(error instanceof CompletionException && null != error.getCause() ? error.getCause() : error);
+      }
+    });
+    return result;
+  }
+
+  static CompletableFuture<CachedSecret> load(Supplier<CompletableFuture<CachedSecret>> loader) {
+    try {
+      return loader.get();
+    } catch (RuntimeException ex) {
+      CompletableFuture<CachedSecret> result = new CompletableFuture<>();
+      result.completeExceptionally(ex);
+      return result;
+    }
+  }
+
+  void revalidateAsync(Key key, Supplier<CompletableFuture<CachedSecret>> loader) {
+    if (!this.refreshing.add(key)) {
+      return;
+    }
+    log.trace("revalidateAsync() - Reloading '{}' in the background", key.secretId);
+    load(loader).whenComplete((loaded, error) -> {
+      if (null == error) {
+        this.cache.put(key, loaded);
+      } else {
+        log.warn("revalidateAsync() - Could not reload '{}'. Continuing to serve the previous value.", key.secretId, error);
+      }
+      this.refreshing.remove(key);
+    });
+  }
+
+  void revalidate(Key key, Callable<CachedSecret> loader) {
+    if (!this.refreshing.add(key)) {
+      return;
+    }
+    log.trace("revalidate() - Reloading '{}' in the background", key.secretId);
+    try {
+      this.executorService.execute(() -> {
+        try {
+          this.cache.put(key, loader.call());
+        } catch (Exception ex) {
+          log.warn("revalidate() - Could not reload '{}'. Continuing to serve the previous value.", key.secretId, ex);
+        } finally {
+          this.refreshing.remove(key);
+        }
+      });
+    } catch (RuntimeException ex) {
+      this.refreshing.remove(key);
+      throw ex;
+    }
+  }
+
+  /**
+   * Seeds the cache with a secret that was not retrieved by this process and reloads it in the
+   * background. Secrets that are already cached are left alone.
+   */
+  void warm(ClientKey client, CachedSecret secret, Callable<CachedSecret> loader) {
+    Key key = new Key(client, secret.secretId);
+    if (null == this.cache.asMap().putIfAbsent(key, secret)) {
+      revalidate(key, loader);
+    }
+  }
+
+  /**
+   * Returns true the first time it is called for a set of prefetch settings. Prefetched secrets end up
+   * in this cache, so other providers sharing it do not need to prefetch them again.
+   */
+  boolean claimPrefetch(List<Object> settings) {
+    return this.prefetched.add(settings);
+  }
+
+  /**
+   * Returns the secrets currently cached for a client.
+   */
+  List<CachedSecret> secrets(ClientKey client) {
+    List<CachedSecret> result = new ArrayList<>();
+    for (Map.Entry<Key, CachedSecret> entry : this.cache.asMap().entrySet()) {
+      if (entry.getKey().client.equals(client)) {
+        result.add(entry.getValue());
+      }
+    }
+    return result;
+  }
+
+  void put(ClientKey client, CachedSecret secret) {
+    this.cache.put(new Key(client, secret.secretId), secret);
+  }
+
+  void invalidate(ClientKey client, String secretId) {
+    this.cache.invalidate(new Key(client, secretId));
+  }
+
+  long size() {
+    return this.cache.size();
+  }
+
+  static class Key {
+    final ClientKey client;
+    final String secretId;
+
+    Key(ClientKey client, String secretId) {
+      this.client = client;
+      this.secretId = secretId;
+    }
+
+    @Override
+    public boolean equals(Object o) {
+      if (this == o) {
+        return true;
+      }
+      if (!(o instanceof Key)) {
+        return false;
+      }
+      Key that = (Key) o;
+      return this.client.equals(that.client) && this.secretId.equals(that.secretId);
+    }
+
+    @Override
+    public int hashCode() {
+      return Objects.hash(this.client, this.secretId);
+    }
+  }
+}
@@ -0,0 +1,80 @@
+/**
+ * Copyright © 2021 Jeremy Custenborder (jcustenborder@gmail.com)
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.github.jcustenborder.kafka.config.aws;
+
+import com.fasterxml.jackson.databind.ObjectMapper;
+import org.apache.kafka.common.KafkaException;
+import org.apache.kafka.common.config.ConfigException;
+import org.apache.kafka.common.utils.Utils;
+
+import java.io.IOException;
+import java.util.Map;
+import java.util.Set;
+
+/**
+ * Reads the requested keys out of a secret value. All keys are returned when none are requested.
+ * Custom formats implement this interface and are selected by class name in `secret.codec` or
+ * `secret.codec.overrides`. Implementations need a public no-argument constructor.
+ */
+public interface SecretCodec {
+  Map<String, String> extract(SecretValue secret, Set<String> keys) throws IOException;
+
+  /**
+   * Creates the codec for a spec such as `json`, `properties+gzip` or `com.example.MyCodec+base64`.
+   */
+  static SecretCodec of(String setting, String spec, ObjectMapper mapper) {
+    String[] parts = spec.split("\\+");
+    String format = parts[0].trim();
+    SecretCodec codec;
+    switch (format) {
+      case "json":
+        codec = new JsonSecretExtractor(mapper);
+        break;
+      case "properties":
+        codec = new PropertiesSecretCodec();
+        break;
+      case "raw":
+        codec = new RawSecretCodec();
+        break;
+      default:
+        try {
+          codec = Utils.newInstance(format, SecretCodec.class);
+        } catch (ClassNotFoundException | KafkaException ex) {
+          ConfigException configException = new ConfigException(setting, spec, "Unknown format '" + format + "'.");
+          configException.initCause(ex);
+          throw configException;
+        }
+    }
+    for (int i = parts.length - 1; i > 0; i--) {
+      codec = new EncodedSecretCodec(EncodedSecretCodec.Encoding.of(setting, spec, parts[i]), codec);
+    }
+    return codec;
+  }
+
+  /**
+   * Checks a spec when the config is parsed. A format that is not built in is only checked when the
+   * codec is created, as it names a class.
+   */
+  static void validate(String setting, String spec) {
+    String[] parts = spec.split("\\+");
+    if (0 == parts.length || parts[0].trim().isEmpty()) {
+      throw new ConfigException(setting, spec, "A format must be specified.");
+    }
+    for (int i = 1; i < parts.length; i++) {
+      EncodedSecretCodec.Encoding.of(setting, spec, parts[i]);
+    }
+  }
+}
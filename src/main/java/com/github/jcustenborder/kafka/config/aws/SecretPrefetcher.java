@@ -0,0 +1,208 @@
+/**
+ * Copyright © 2021 Jeremy Custenborder (jcustenborder@gmail.com)
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.github.jcustenborder.kafka.config.aws;
+
+import com.amazonaws.services.secretsmanager.model.Filter;
+import com.amazonaws.services.secretsmanager.model.ListSecretsRequest;
+import com.amazonaws.services.secretsmanager.model.ListSecretsResult;
+import com.amazonaws.services.secretsmanager.model.SecretListEntry;
+import com.google.common.util.concurrent.Futures;
+import com.google.common.util.concurrent.ThreadFactoryBuilder;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+
+/**
+ * Warms the secret cache when the provider is configured. Prefetching runs in the background, once
+ * per client and set of prefetch settings in the process. Secrets are retrieved in parallel on a
+ * bounded pool so that the lookups made while connector configs are resolved are served locally.
+ * With secret.async.enabled every lookup is started at once and queued by the throttle instead.
+ * Failures are logged and left for get() to report.
+ */
+class SecretPrefetcher {
+  private static final Logger log = LoggerFactory.getLogger(SecretPrefetcher.class);
+  static final ExecutorService EXECUTOR = Executors.newCachedThreadPool(
+      new ThreadFactoryBuilder()
+          .setDaemon(true)
+          .setNameFormat("secrets-manager-prefetcher-%d")
+          .build()
+  );
+
+  final SecretsManagerConfigProvider provider;
+  final SecretsManagerConfigProviderConfig config;
+
+  SecretPrefetcher(SecretsManagerConfigProvider provider, SecretsManagerConfigProviderConfig config) {
+    this.provider = provider;
+    this.config = config;
+  }
+
+  Set<String> secretIds() {
+    Set<String> secretIds = new LinkedHashSet<>();
+    for (String path : this.config.prefetchPaths) {
+      secretIds.add(this.provider.secretId(path));
+    }
+    if (this.config.prefetchPrefixEnabled) {
+      secretIds.addAll(listSecrets());
+    }
+    return secretIds;
+  }
+
+  /**
+   * Lists the names of every secret under the configured prefix. The name filter of ListSecrets
+   * matches on the beginning of the name, so the results are checked against the full path prefix.
+   */
+  List<String> listSecrets() {
+    final String prefix = (null != this.config.prefix && !this.config.prefix.isEmpty()) ?
+        this.provider.secretId("") + "/" : "";
+    List<String> result = new ArrayList<>();
+    ListSecretsRequest request = new ListSecretsRequest()
+        .withMaxResults(100);
+    if (!prefix.isEmpty()) {
+      request = request.withFilters(
+          new Filter()
+              .withKey("name")
+              .withValues(prefix)
+      );
+    }
+    String nextToken = null;
+    do {
+      final ListSecretsRequest pageRequest = request.withNextToken(nextToken);
+      ListSecretsResult response = this.provider.throttle.execute(() -> this.provider.secretsManager.listSecrets(pageRequest));
+      if (null != response.getSecretList()) {
+        for (SecretListEntry entry : response.getSecretList()) {
+          if (entry.getName().startsWith(prefix)) {
+            result.add(entry.getName());
+          }
+        }
+      }
+      nextToken = response.getNextToken();
+    } while (null != nextToken);
+    log.debug("listSecrets() - Found {} secret(s) under '{}'", result.size(), prefix);
+    return result;
+  }
+
+  /**
+   * Starts prefetching unless another provider sharing the cache has already prefetched the same
+   * secrets with the same client. The returned future completes once prefetching is done.
+   */
+  CompletableFuture<Void> start() {
+    if (this.config.prefetchPaths.isEmpty() && !this.config.prefetchPrefixEnabled) {
+      return CompletableFuture.completedFuture(null);
+    }
+    List<Object> settings = Arrays.asList(
+        this.provider.clientKey,
+        this.config.prefix,
+        this.config.prefetchPaths,
+        this.config.prefetchPrefixEnabled
+    );
+    if (!this.provider.cache.claimPrefetch(settings)) {
+      log.debug("start() - Secrets have already been prefetched for this client. Skipping prefetch.");
+      return CompletableFuture.completedFuture(null);
+    }
+    return CompletableFuture.runAsync(this::prefetch, EXECUTOR);
+  }
+
+  void prefetch() {
+    final Set<String> secretIds;
+    try {
+      secretIds = secretIds();
+    } catch (RuntimeException ex) {
+      log.warn("prefetch() - Exception thrown while listing secrets. Skipping prefetch.", ex);
+      return;
+    }
+    if (secretIds.isEmpty()) {
+      return;
+    }
+    final long started = System.currentTimeMillis();
+    if (null != this.provider.asyncSecretsManager) {
+      log.info("prefetch() - Prefetching {} secret(s) asynchronously", secretIds.size());
+      List<CompletableFuture<CachedSecret>> futures = new ArrayList<>(secretIds.size());
+      for (String secretId : secretIds) {
+        futures.add(this.provider.secretAsync(secretId));
+      }
+      try {
+        CompletableFuture.allOf(futures.toArray(new CompletableFuture[0])).get(this.config.prefetchTimeoutMs, TimeUnit.MILLISECONDS);
+      } catch (TimeoutException ex) {
+        log.warn("prefetch() - Prefetching did not complete within {} ms.", this.config.prefetchTimeoutMs);
+      } catch (ExecutionException ex) {
+        // Reported for each secret below.
+      } catch (InterruptedException ex) {
+        Thread.currentThread().interrupt();
+        log.warn("prefetch() - Interrupted while prefetching secrets.");
+        return;
+      }
+      report(futures, started);
+      return;
+    }
+    log.info("prefetch() - Prefetching {} secret(s) with a concurrency of {}", secretIds.size(), this.config.prefetchConcurrency);
+    ExecutorService executorService = Executors.newFixedThreadPool(
+        Math.min(this.config.prefetchConcurrency, secretIds.size()),
+        new ThreadFactoryBuilder()
+            .setDaemon(true)
+            .setNameFormat("secrets-manager-prefetch-%d")
+            .build()
+    );
+    try {
+      List<Future<CachedSecret>> futures = new ArrayList<>(secretIds.size());
+      for (String secretId : secretIds) {
+        futures.add(executorService.submit(() -> this.provider.secret(secretId)));
+      }
+      executorService.shutdown();
+      if (!executorService.awaitTermination(this.config.prefetchTimeoutMs, TimeUnit.MILLISECONDS)) {
+        log.warn("prefetch() - Prefetching did not complete within {} ms.", this.config.prefetchTimeoutMs);
+      }
+      report(futures, started);
+    } catch (InterruptedException ex) {
+      Thread.currentThread().interrupt();
+      log.warn("prefetch() - Interrupted while prefetching secrets.");
+    } finally {
+      executorService.shutdownNow();
+    }
+  }
+
+  void report(List<? extends Future<CachedSecret>> futures, long started) {
+    int succeeded = 0;
+    for (Future<CachedSecret> future : futures) {
+      if (!future.isDone()) {
+        continue;
+      }
+      try {
+        Futures.getDone(future);
+        succeeded++;
+      } catch (ExecutionException ex) {
+        log.warn("prefetch() - Could not prefetch secret", ex.getCause());
+      }
+    }
+    log.info(
+        "prefetch() - Prefetched {} of {} secret(s) in {} ms",
+        succeeded,
+        futures.size(),
+        System.currentTimeMillis() - started
+    );
+  }
+}
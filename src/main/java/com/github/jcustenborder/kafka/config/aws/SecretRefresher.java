@@ -0,0 +1,363 @@
+/**
+ * Copyright © 2021 Jeremy Custenborder (jcustenborder@gmail.com)
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.github.jcustenborder.kafka.config.aws;
+
+import com.amazonaws.services.secretsmanager.model.Filter;
+import com.amazonaws.services.secretsmanager.model.ListSecretsRequest;
+import com.amazonaws.services.secretsmanager.model.ListSecretsResult;
+import com.amazonaws.services.secretsmanager.model.SecretListEntry;
+import com.google.common.collect.Iterables;
+import com.google.common.util.concurrent.ThreadFactoryBuilder;
+import org.apache.kafka.common.config.ConfigData;
+import org.apache.kafka.common.config.ConfigChangeCallback;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.io.Closeable;
+import java.util.AbstractMap;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.LinkedHashMap;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Objects;
+import java.util.Set;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Tracks the paths that have been subscribed to and polls them on a single background thread. Each
+ * poll only lists the version metadata of the subscribed secrets. The value is retrieved when the
+ * version holding the AWSCURRENT stage changes and callbacks are only notified about keys whose values
+ * changed.
+ */
+class SecretRefresher implements Closeable {
+  private static final Logger log = LoggerFactory.getLogger(SecretRefresher.class);
+  static final String ARN_PREFIX = "arn:";
+  static final int MAXIMUM_FILTER_VALUES = 10;
+
+  final SecretsManagerConfigProvider provider;
+  final SecretsManagerConfigProviderConfig config;
+  final Map<String, Subscription> subscriptions = new ConcurrentHashMap<>();
+  ScheduledExecutorService executorService;
+
+  SecretRefresher(SecretsManagerConfigProvider provider, SecretsManagerConfigProviderConfig config) {
+    this.provider = provider;
+    this.config = config;
+  }
+
+  /**
+   * The secret is retrieved before the lock is taken so a slow or throttled lookup does not hold up
+   * other subscriptions or the refresher thread.
+   */
+  void subscribe(String path, Set<String> keys, ConfigChangeCallback callback) {
+    final String secretId = this.provider.secretId(path);
+    CachedSecret secret = null;
+    while (true) {
+      synchronized (this) {
+        Subscription subscription = this.subscriptions.get(path);
+        if (null == subscription && null != secret) {
+          subscription = new Subscription(path, secretId, secret);
+          this.subscriptions.put(path, subscription);
+        }
+        if (null != subscription) {
+          subscription.add(keys, callback);
+          start();
+          return;
+        }
+      }
+      secret = this.provider.secret(secretId);
+    }
+  }
+
+  synchronized void start() {
+    if (null == this.executorService) {
+      this.executorService = Executors.newSingleThreadScheduledExecutor(
+          new ThreadFactoryBuilder()
+              .setDaemon(true)
+              .setNameFormat("secrets-manager-refresher-%d")
+              .build()
+      );
+      schedule();
+    }
+  }
+
+  synchronized void unsubscribe(String path, Set<String> keys, ConfigChangeCallback callback) {
+    Subscription subscription = this.subscriptions.get(path);
+    if (null == subscription) {
+      return;
+    }
+    subscription.remove(keys, callback);
+    if (subscription.isEmpty()) {
+      this.subscriptions.remove(path);
+    }
+  }
+
+  synchronized void unsubscribeAll() {
+    this.subscriptions.clear();
+  }
+
+  long nextDelay() {
+    long jitter = this.config.pollJitterMs > 0 ?
+        ThreadLocalRandom.current().nextLong(-this.config.pollJitterMs, this.config.pollJitterMs + 1) :
+        0L;
+    return Math.max(1000L, this.config.pollIntervalMs + jitter);
+  }
+
+  void schedule() {
+    long delay = nextDelay();
+    log.trace("schedule() - Next poll in {} ms", delay);
+    this.executorService.schedule(this::pollAndReschedule, delay, TimeUnit.MILLISECONDS);
+  }
+
+  void pollAndReschedule() {
+    try {
+      poll();
+    } catch (RuntimeException ex) {
+      log.error("Exception thrown while polling for changed secrets", ex);
+    } finally {
+      synchronized (this) {
+        if (null != this.executorService && !this.executorService.isShutdown()) {
+          schedule();
+        }
+      }
+    }
+  }
+
+  /**
+   * Checks every subscribed path once. The version stages of all subscribed secrets are read with
+   * ListSecrets and only the secrets whose AWSCURRENT version changed are retrieved. Subscriptions
+   * that fail are logged and checked again during the next poll.
+   */
+  void poll() {
+    List<Subscription> subscriptions = new ArrayList<>(this.subscriptions.values());
+    log.debug("poll() - Checking {} subscription(s)", subscriptions.size());
+    if (subscriptions.isEmpty()) {
+      return;
+    }
+    Map<String, String> currentVersions = currentVersions(subscriptions);
+    List<Subscription> changed = new ArrayList<>();
+    for (Subscription subscription : subscriptions) {
+      String currentVersion = currentVersions.get(subscription.secretId);
+      if (null == currentVersion || currentVersion.equals(subscription.secret.versionId)) {
+        log.trace("poll() - '{}' is unchanged", subscription.secretId);
+        continue;
+      }
+      log.debug("poll() - '{}' changed from version '{}' to '{}'", subscription.secretId, subscription.secret.versionId, currentVersion);
+      changed.add(subscription);
+    }
+    if (changed.isEmpty()) {
+      return;
+    }
+    if (null != this.provider.asyncSecretsManager) {
+      reloadAsync(changed);
+      return;
+    }
+    for (Subscription subscription : changed) {
+      try {
+        CachedSecret previous = subscription.secret;
+        CachedSecret current = this.provider.reload(subscription.secretId);
+        subscription.secret = current;
+        notify(subscription, previous, current);
+      } catch (Exception ex) {
+        log.warn("poll() - Exception thrown while reloading '{}'", subscription.secretId, ex);
+      }
+    }
+  }
+
+  /**
+   * Returns the version holding the AWSCURRENT stage for each subscribed secret id. Names are sent as
+   * ListSecrets name filters, ten to a request. The filter matches on the beginning of the name, so
+   * the results are checked against the exact secret ids. Secrets subscribed to by ARN cannot be
+   * filtered by name and are described individually.
+   */
+  Map<String, String> currentVersions(List<Subscription> subscriptions) {
+    Set<String> names = new LinkedHashSet<>();
+    Map<String, String> result = new HashMap<>();
+    for (Subscription subscription : subscriptions) {
+      if (!subscription.secretId.startsWith(ARN_PREFIX)) {
+        names.add(subscription.secretId);
+        continue;
+      }
+      try {
+        result.put(subscription.secretId, this.provider.currentVersion(subscription.secretId));
+      } catch (RuntimeException ex) {
+        log.warn("currentVersions() - Exception thrown while checking '{}'", subscription.secretId, ex);
+      }
+    }
+    for (List<String> batch : Iterables.partition(names, MAXIMUM_FILTER_VALUES)) {
+      try {
+        listCurrentVersions(batch, result);
+      } catch (RuntimeException ex) {
+        log.warn("currentVersions() - Exception thrown while listing {} secret(s)", batch.size(), ex);
+      }
+    }
+    return result;
+  }
+
+  void listCurrentVersions(List<String> names, Map<String, String> result) {
+    ListSecretsRequest request = new ListSecretsRequest()
+        .withMaxResults(100)
+        .withFilters(
+            new Filter()
+                .withKey("name")
+                .withValues(names)
+        );
+    String nextToken = null;
+    do {
+      final ListSecretsRequest pageRequest = request.withNextToken(nextToken);
+      ListSecretsResult response = this.provider.throttle.execute(() -> this.provider.secretsManager.listSecrets(pageRequest));
+      if (null != response.getSecretList()) {
+        for (SecretListEntry entry : response.getSecretList()) {
+          if (names.contains(entry.getName())) {
+            result.put(entry.getName(), SecretsManagerConfigProvider.currentVersion(entry.getSecretVersionsToStages()));
+          }
+        }
+      }
+      nextToken = response.getNextToken();
+    } while (null != nextToken);
+  }
+
+  /**
+   * Retrieves the changed secrets concurrently with the asynchronous client. Callbacks are still
+   * notified on the refresher thread once all of them have completed.
+   */
+  void reloadAsync(List<Subscription> subscriptions) {
+    List<CompletableFuture<CachedSecret>> changes = new ArrayList<>(subscriptions.size());
+    for (Subscription subscription : subscriptions) {
+      changes.add(
+          this.provider.reloadAsync(subscription.secretId)
+              .exceptionally(ex -> {
+                log.warn("reloadAsync() - Exception thrown while reloading '{}'", subscription.secretId, ex);
+                return null;
+              })
+      );
+    }
+    CompletableFuture.allOf(changes.toArray(new CompletableFuture[0])).join();
+    for (int i = 0; i < subscriptions.size(); i++) {
+      CachedSecret current = changes.get(i).join();
+      if (null != current) {
+        Subscription subscription = subscriptions.get(i);
+        CachedSecret previous = subscription.secret;
+        subscription.secret = current;
+        notify(subscription, previous, current);
+      }
+    }
+  }
+
+  void notify(Subscription subscription, CachedSecret previous, CachedSecret current) {
+    for (Map.Entry<ConfigChangeCallback, Set<String>> entry : subscription.callbacks()) {
+      Map<String, String> previousValues = this.provider.read(previous, entry.getValue());
+      Map<String, String> currentValues = this.provider.read(current, entry.getValue());
+      // Keys that were removed from the secret are reported with a null value.
+      Set<String> keys = new LinkedHashSet<>(previousValues.keySet());
+      keys.addAll(currentValues.keySet());
+      Map<String, String> changed = new LinkedHashMap<>();
+      for (String key : keys) {
+        String value = currentValues.get(key);
+        if (!Objects.equals(value, previousValues.get(key))) {
+          changed.put(key, value);
+        }
+      }
+      if (changed.isEmpty()) {
+        continue;
+      }
+      log.debug("notify() - Notifying callback of {} changed key(s) for '{}'", changed.size(), subscription.path);
+      try {
+        entry.getKey().onChange(subscription.path, new ConfigData(changed, this.provider.ttl(current)));
+      } catch (RuntimeException ex) {
+        log.error("Exception thrown by callback for '{}'", subscription.path, ex);
+      }
+    }
+  }
+
+  @Override
+  public synchronized void close() {
+    this.subscriptions.clear();
+    if (null != this.executorService) {
+      this.executorService.shutdownNow();
+      this.executorService = null;
+    }
+  }
+
+  static class Subscription {
+    final String path;
+    final String secretId;
+    final Map<ConfigChangeCallback, Set<String>> callbacks = new LinkedHashMap<>();
+    volatile CachedSecret secret;
+
+    Subscription(String path, String secretId, CachedSecret secret) {
+      this.path = path;
+      this.secretId = secretId;
+      this.secret = secret;
+    }
+
+    /**
+     * An empty key set subscribes the callback to every key in the secret.
+     */
+    synchronized void add(Set<String> keys, ConfigChangeCallback callback) {
+      Set<String> subscribed = this.callbacks.get(callback);
+      if (null == keys || keys.isEmpty() || (null != subscribed && subscribed.isEmpty())) {
+        this.callbacks.put(callback, new HashSet<>());
+      } else if (null == subscribed) {
+        this.callbacks.put(callback, new HashSet<>(keys));
+      } else {
+        subscribed.addAll(keys);
+      }
+    }
+
+    /**
+     * An empty key set removes the callback entirely. Removing some keys from a callback that is
+     * subscribed to every key leaves it subscribed, as the remaining keys are not known.
+     */
+    synchronized void remove(Set<String> keys, ConfigChangeCallback callback) {
+      Set<String> subscribed = this.callbacks.get(callback);
+      if (null == subscribed) {
+        return;
+      }
+      if (null == keys || keys.isEmpty()) {
+        this.callbacks.remove(callback);
+        return;
+      }
+      if (subscribed.isEmpty()) {
+        log.trace("remove() - '{}' is subscribed to every key. Keeping the callback.", this.path);
+        return;
+      }
+      subscribed.removeAll(keys);
+      if (subscribed.isEmpty()) {
+        this.callbacks.remove(callback);
+      }
+    }
+
+    synchronized boolean isEmpty() {
+      return this.callbacks.isEmpty();
+    }
+
+    synchronized List<Map.Entry<ConfigChangeCallback, Set<String>>> callbacks() {
+      List<Map.Entry<ConfigChangeCallback, Set<String>>> result = new ArrayList<>(this.callbacks.size());
+      for (Map.Entry<ConfigChangeCallback, Set<String>> entry : this.callbacks.entrySet()) {
+        result.add(new AbstractMap.SimpleImmutableEntry<>(entry.getKey(), new HashSet<>(entry.getValue())));
+      }
+      return result;
+    }
+  }
+}
@@ -0,0 +1,198 @@
+/**
+ * Copyright © 2021 Jeremy Custenborder (jcustenborder@gmail.com)
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.github.jcustenborder.kafka.config.aws;
+
+import com.amazonaws.services.secretsmanager.AWSSecretsManager;
+import com.amazonaws.services.secretsmanager.model.APIErrorType;
+import com.amazonaws.services.secretsmanager.model.AWSSecretsManagerException;
+import com.amazonaws.services.secretsmanager.model.BatchGetSecretValueRequest;
+import com.amazonaws.services.secretsmanager.model.BatchGetSecretValueResult;
+import com.amazonaws.services.secretsmanager.model.DecryptionFailureException;
+import com.amazonaws.services.secretsmanager.model.GetSecretValueResult;
+import com.amazonaws.services.secretsmanager.model.ResourceNotFoundException;
+import com.amazonaws.services.secretsmanager.model.SecretValueEntry;
+import com.google.common.base.Throwables;
+import com.google.common.util.concurrent.ThreadFactoryBuilder;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.io.Closeable;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Collects the distinct secret ids that are requested within a short window and resolves them with a
+ * single BatchGetSecretValue call. A batch is sent when the window closes or when it reaches the
+ * maximum size, whichever comes first. Callers requesting an id that is already pending wait on the
+ * same result.
+ */
+class SecretRequestCoalescer implements Closeable {
+  private static final Logger log = LoggerFactory.getLogger(SecretRequestCoalescer.class);
+  static final int MAXIMUM_BATCH_SIZE = 20;
+
+  final AWSSecretsManager secretsManager;
+  final SecretsManagerThrottle throttle;
+  final long windowMs;
+  final int maxBatchSize;
+  final ScheduledExecutorService executorService;
+  Map<String, CompletableFuture<GetSecretValueResult>> pending = new LinkedHashMap<>();
+
+  SecretRequestCoalescer(AWSSecretsManager secretsManager, SecretsManagerThrottle throttle, long windowMs, int maxBatchSize) {
+    this.secretsManager = secretsManager;
+    this.throttle = throttle;
+    this.windowMs = windowMs;
+    this.maxBatchSize = Math.min(maxBatchSize, MAXIMUM_BATCH_SIZE);
+    this.executorService = Executors.newScheduledThreadPool(
+        2,
+        new ThreadFactoryBuilder()
+            .setDaemon(true)
+            .setNameFormat("secrets-manager-batch-%d")
+            .build()
+    );
+  }
+
+  GetSecretValueResult getSecretValue(String secretId) {
+    CompletableFuture<GetSecretValueResult> future;
+    synchronized (this) {
+      future = this.pending.get(secretId);
+      if (null == future) {
+        future = new CompletableFuture<>();
+        this.pending.put(secretId, future);
+        if (this.pending.size() >= this.maxBatchSize) {
+          final Map<String, CompletableFuture<GetSecretValueResult>> batch = drain();
+          this.executorService.execute(() -> send(batch));
+        } else if (this.pending.size() == 1) {
+          final Map<String, CompletableFuture<GetSecretValueResult>> batch = this.pending;
+          this.executorService.schedule(() -> flush(batch), this.windowMs, TimeUnit.MILLISECONDS);
+        }
+      }
+    }
+    try {
+      return future.join();
+    } catch (CompletionException ex) {
+      Throwables.throwIfUnchecked(ex.getCause());
+      throw ex;
+    }
+  }
+
+  synchronized Map<String, CompletableFuture<GetSecretValueResult>> drain() {
+    Map<String, CompletableFuture<GetSecretValueResult>> batch = this.pending;
+    this.pending = new LinkedHashMap<>();
+    return batch;
+  }
+
+  /**
+   * Sends the batch when the window closes unless it was already sent because it filled up.
+   */
+  void flush(Map<String, CompletableFuture<GetSecretValueResult>> batch) {
+    synchronized (this) {
+      if (batch != this.pending) {
+        return;
+      }
+      drain();
+    }
+    send(batch);
+  }
+
+  void send(Map<String, CompletableFuture<GetSecretValueResult>> batch) {
+    log.trace("send() - Requesting {} secret(s)", batch.size());
+    try {
+      BatchGetSecretValueRequest request = new BatchGetSecretValueRequest()
+          .withSecretIdList(batch.keySet());
+      String nextToken = null;
+      do {
+        final BatchGetSecretValueRequest pageRequest = request.withNextToken(nextToken);
+        BatchGetSecretValueResult response = this.throttle.execute(() -> this.secretsManager.batchGetSecretValue(pageRequest));
+        if (null != response.getSecretValues()) {
+          for (SecretValueEntry entry : response.getSecretValues()) {
+            CompletableFuture<GetSecretValueResult> future = find(batch, entry.getName(), entry.getARN());
+            if (null != future) {
+              future.complete(
+                  new GetSecretValueResult()
+                      .withARN(entry.getARN())
+                      .withName(entry.getName())
+                      .withVersionId(entry.getVersionId())
+                      .withVersionStages(entry.getVersionStages())
+                      .withSecretString(entry.getSecretString())
+                      .withSecretBinary(entry.getSecretBinary())
+                      .withCreatedDate(entry.getCreatedDate())
+              );
+            }
+          }
+        }
+        if (null != response.getErrors()) {
+          for (APIErrorType error : response.getErrors()) {
+            CompletableFuture<GetSecretValueResult> future = batch.get(error.getSecretId());
+            if (null != future) {
+              future.completeExceptionally(exception(error));
+            }
+          }
+        }
+        nextToken = response.getNextToken();
+      } while (null != nextToken);
+
+      for (Map.Entry<String, CompletableFuture<GetSecretValueResult>> entry : batch.entrySet()) {
+        if (!entry.getValue().isDone()) {
+          entry.getValue().completeExceptionally(
+              new ResourceNotFoundException(String.format("Secret '%s' was not returned.", entry.getKey()))
+          );
+        }
+      }
+    } catch (RuntimeException ex) {
+      for (CompletableFuture<GetSecretValueResult> future : batch.values()) {
+        future.completeExceptionally(ex);
+      }
+    }
+  }
+
+  /**
+   * Secrets can be requested by name or by ARN, the response contains both.
+   */
+  static CompletableFuture<GetSecretValueResult> find(Map<String, CompletableFuture<GetSecretValueResult>> batch, String name, String arn) {
+    CompletableFuture<GetSecretValueResult> future = batch.get(name);
+    if (null == future && null != arn) {
+      future = batch.get(arn);
+    }
+    return future;
+  }
+
+  static AWSSecretsManagerException exception(APIErrorType error) {
+    AWSSecretsManagerException exception;
+    if ("ResourceNotFoundException".equals(error.getErrorCode())) {
+      exception = new ResourceNotFoundException(error.getMessage());
+    } else if ("DecryptionFailure".equals(error.getErrorCode())) {
+      exception = new DecryptionFailureException(error.getMessage());
+    } else {
+      exception = new AWSSecretsManagerException(error.getMessage());
+    }
+    exception.setErrorCode(error.getErrorCode());
+    return exception;
+  }
+
+  @Override
+  public void close() {
+    this.executorService.shutdownNow();
+    Map<String, CompletableFuture<GetSecretValueResult>> batch = drain();
+    for (CompletableFuture<GetSecretValueResult> future : batch.values()) {
+      future.cancel(true);
+    }
+  }
+}
@@ -0,0 +1,132 @@
+/**
+ * Copyright © 2021 Jeremy Custenborder (jcustenborder@gmail.com)
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.github.jcustenborder.kafka.config.aws;
+
+import javax.crypto.Cipher;
+import javax.crypto.KeyGenerator;
+import javax.crypto.SecretKey;
+import javax.crypto.spec.GCMParameterSpec;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.security.GeneralSecurityException;
+import java.security.SecureRandom;
+import java.util.Arrays;
+
+/**
+ * Encrypts secret payloads into direct buffers with AES-GCM under a key that only exists in this
+ * process. Sealed secrets keep their metadata on the heap, the payload is only decrypted while the
+ * requested keys are read from it.
+ */
+class SecretSealer {
+  static final int IV_LENGTH = 12;
+  static final int TAG_LENGTH_BITS = 128;
+
+  final SecretKey key;
+  final SecureRandom random = new SecureRandom();
+
+  SecretSealer() {
+    try {
+      KeyGenerator keyGenerator = KeyGenerator.getInstance("AES");
+      keyGenerator.init(256, this.random);
+      this.key = keyGenerator.generateKey();
+    } catch (GeneralSecurityException ex) {
+      throw new IllegalStateException("Could not generate the key used to encrypt cached secrets.", ex);
+    }
+  }
+
+  CachedSecret seal(CachedSecret secret) {
+    if (secret instanceof Sealed) {
+      return secret;
+    }
+    final boolean string = secret.isString();
+    final byte[] encoded = null != secret.secretString ? secret.secretString.getBytes(StandardCharsets.UTF_8) : null;
+    final ByteBuffer plaintext = null != encoded ? ByteBuffer.wrap(encoded) : secret.secretBinary.duplicate();
+    try {
+      byte[] iv = new byte[IV_LENGTH];
+      this.random.nextBytes(iv);
+      Cipher cipher = Cipher.getInstance("AES/GCM/NoPadding");
+      cipher.init(Cipher.ENCRYPT_MODE, this.key, new GCMParameterSpec(TAG_LENGTH_BITS, iv));
+      cipher.updateAAD(secret.secretId.getBytes(StandardCharsets.UTF_8));
+      ByteBuffer payload = ByteBuffer.allocateDirect(IV_LENGTH + cipher.getOutputSize(plaintext.remaining()));
+      payload.put(iv);
+      cipher.doFinal(plaintext, payload);
+      payload.flip();
+      return new Sealed(secret, payload.asReadOnlyBuffer(), string, this);
+    } catch (GeneralSecurityException ex) {
+      throw new IllegalStateException(String.format("Could not encrypt secret '%s'", secret.secretId), ex);
+    } finally {
+      if (null != encoded) {
+        Arrays.fill(encoded, (byte) 0);
+      }
+    }
+  }
+
+  CachedSecret open(Sealed secret) throws IOException {
+    ByteBuffer payload = secret.payload.duplicate();
+    byte[] iv = new byte[IV_LENGTH];
+    payload.get(iv);
+    final byte[] plaintext;
+    final int length;
+    try {
+      Cipher cipher = Cipher.getInstance("AES/GCM/NoPadding");
+      cipher.init(Cipher.DECRYPT_MODE, this.key, new GCMParameterSpec(TAG_LENGTH_BITS, iv));
+      cipher.updateAAD(secret.secretId.getBytes(StandardCharsets.UTF_8));
+      plaintext = new byte[cipher.getOutputSize(payload.remaining())];
+      length = cipher.doFinal(payload, ByteBuffer.wrap(plaintext));
+    } catch (GeneralSecurityException ex) {
+      throw new IOException(String.format("Could not decrypt cached secret '%s'", secret.secretId), ex);
+    }
+    // String secrets stay as UTF-8 bytes so destroy() can zero them once the codec has run.
+    ByteBuffer value = ByteBuffer.wrap(plaintext, 0, length);
+    if (secret.string) {
+      return new CachedSecret.Utf8String(secret.secretId, secret.versionId, value, secret.fetchedAt, secret.nextRotationAt);
+    }
+    return new CachedSecret(secret.secretId, secret.versionId, null, value, secret.fetchedAt, secret.nextRotationAt);
+  }
+
+  /**
+   * Zeroes the plaintext of a secret returned by open() or read from a snapshot.
+   */
+  static void destroy(CachedSecret opened) {
+    if (null != opened.secretBinary && opened.secretBinary.hasArray()) {
+      Arrays.fill(opened.secretBinary.array(), (byte) 0);
+    }
+  }
+
+  static class Sealed extends CachedSecret {
+    final ByteBuffer payload;
+    final boolean string;
+    final SecretSealer sealer;
+
+    Sealed(CachedSecret secret, ByteBuffer payload, boolean string, SecretSealer sealer) {
+      super(secret.secretId, secret.versionId, null, null, secret.fetchedAt, secret.nextRotationAt);
+      this.payload = payload;
+      this.string = string;
+      this.sealer = sealer;
+    }
+
+    @Override
+    CachedSecret open() throws IOException {
+      return this.sealer.open(this);
+    }
+
+    @Override
+    int payloadSize() {
+      return this.payload.capacity();
+    }
+  }
+}
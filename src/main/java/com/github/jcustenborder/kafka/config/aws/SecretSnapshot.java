@@ -0,0 +1,472 @@
+/**
+ * Copyright © 2021 Jeremy Custenborder (jcustenborder@gmail.com)
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.github.jcustenborder.kafka.config.aws;
+
+import com.amazonaws.auth.AWSCredentialsProvider;
+import com.amazonaws.services.kms.AWSKMS;
+import com.amazonaws.services.kms.AWSKMSClientBuilder;
+import com.amazonaws.services.kms.model.DataKeySpec;
+import com.amazonaws.services.kms.model.DecryptRequest;
+import com.amazonaws.services.kms.model.DecryptResult;
+import com.amazonaws.services.kms.model.GenerateDataKeyRequest;
+import com.amazonaws.services.kms.model.GenerateDataKeyResult;
+import com.google.common.util.concurrent.ThreadFactoryBuilder;
+import org.apache.kafka.common.config.ConfigException;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import javax.crypto.Cipher;
+import javax.crypto.SecretKey;
+import javax.crypto.spec.GCMParameterSpec;
+import javax.crypto.spec.SecretKeySpec;
+import java.io.ByteArrayInputStream;
+import java.io.Closeable;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.NoSuchFileException;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.security.GeneralSecurityException;
+import java.security.SecureRandom;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Base64;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ScheduledFuture;
+import java.util.concurrent.TimeUnit;
+import java.util.function.Supplier;
+import java.util.function.UnaryOperator;
+
+/**
+ * Keeps an encrypted copy of the secrets a provider has retrieved on local disk so that a restarted
+ * worker can resolve its configs without calling Secrets Manager. The snapshot is encrypted with
+ * AES-GCM using either a locally supplied key or a data key generated by KMS, and the client settings
+ * are bound to the ciphertext so a snapshot is never read back by a provider using other credentials.
+ * <p>
+ * The file consists of a magic number, the length and bytes of the wrapped data key (empty for a
+ * local key), the IV and the ciphertext. Writes are delayed briefly so that a burst of retrievals is
+ * written once, and go to a temporary file that replaces the snapshot atomically.
+ * <p>
+ * Providers configured with the same path share one reference counted snapshot. The snapshot does
+ * not hold secrets itself, each write contains the secrets in the shared cache for the client, so it
+ * stays within secret.cache.max.bytes and never keeps evicted secrets reachable. Secrets older than
+ * the longest secret.ttl.ms of the providers can no longer be served from the snapshot and are left
+ * out when it is written.
+ */
+class SecretSnapshot implements Closeable {
+  private static final Logger log = LoggerFactory.getLogger(SecretSnapshot.class);
+  static final int MAGIC = 0x534d5332;
+  static final int IV_LENGTH = 12;
+  static final int TAG_LENGTH_BITS = 128;
+  static final long WRITE_DELAY_MS = 1000L;
+  static final byte TYPE_STRING = 0;
+  static final byte TYPE_BINARY = 1;
+
+  static final Map<Path, SecretSnapshot> INSTANCES = new HashMap<>();
+
+  final Path path;
+  final KeySource keySource;
+  final byte[] associatedData;
+  final Supplier<Collection<CachedSecret>> source;
+  final SecureRandom random = new SecureRandom();
+  final ScheduledExecutorService executorService;
+  ScheduledFuture<?> pendingWrite;
+  List<Object> settings;
+  volatile long ttlMs;
+  int references;
+  boolean loaded;
+
+  SecretSnapshot(Path path, KeySource keySource, String associatedData, long ttlMs, Supplier<Collection<CachedSecret>> source) {
+    this.path = path;
+    this.keySource = keySource;
+    this.associatedData = associatedData.getBytes(StandardCharsets.UTF_8);
+    this.ttlMs = ttlMs;
+    this.source = source;
+    this.executorService = Executors.newSingleThreadScheduledExecutor(
+        new ThreadFactoryBuilder()
+            .setDaemon(true)
+            .setNameFormat("secrets-manager-snapshot-%d")
+            .build()
+    );
+  }
+
+  /**
+   * Returns the snapshot configured for the provider or null if snapshots are not enabled. Every
+   * snapshot returned must be closed. A path can only be shared by providers using the same client
+   * and snapshot key.
+   */
+  static SecretSnapshot of(SecretsManagerConfigProviderConfig config, ClientKey clientKey, SecretCache cache) {
+    if (config.snapshotPath.isEmpty()) {
+      return null;
+    }
+    final Path path = Paths.get(config.snapshotPath).toAbsolutePath().normalize();
+    final List<Object> settings = Arrays.asList(clientKey, config.snapshotKey, config.snapshotKmsKeyId);
+    synchronized (INSTANCES) {
+      SecretSnapshot snapshot = INSTANCES.get(path);
+      if (null == snapshot) {
+        snapshot = new SecretSnapshot(path, keySource(config), clientKey.toString(), config.minimumSecretTTL, () -> cache.secrets(clientKey));
+        snapshot.settings = settings;
+        INSTANCES.put(path, snapshot);
+      } else if (!snapshot.settings.equals(settings)) {
+        throw new ConfigException(
+            SecretsManagerConfigProviderConfig.SNAPSHOT_PATH_CONFIG,
+            config.snapshotPath,
+            "Snapshot is already in use by a provider with different client or snapshot key settings."
+        );
+      }
+      snapshot.ttlMs = Math.max(snapshot.ttlMs, config.minimumSecretTTL);
+      snapshot.references++;
+      return snapshot;
+    }
+  }
+
+  static KeySource keySource(SecretsManagerConfigProviderConfig config) {
+    final KeySource keySource;
+    if (!config.snapshotKmsKeyId.isEmpty()) {
+      AWSKMSClientBuilder builder = AWSKMSClientBuilder.standard();
+      if (!config.region.isEmpty()) {
+        builder = builder.withRegion(config.region);
+      }
+      AWSCredentialsProvider credentialsProvider = AssumeRoleCredentials.INSTANCE.acquire(config);
+      if (null != credentialsProvider) {
+        builder = builder.withCredentials(credentialsProvider);
+      }
+      keySource = new KmsKeySource(builder.build(), config.snapshotKmsKeyId, credentialsProvider);
+    } else if (!config.snapshotKey.isEmpty()) {
+      keySource = new StaticKeySource(decodeKey(config.snapshotKey));
+    } else {
+      throw new ConfigException(
+          SecretsManagerConfigProviderConfig.SNAPSHOT_PATH_CONFIG,
+          config.snapshotPath,
+          "Either " + SecretsManagerConfigProviderConfig.SNAPSHOT_KEY_CONFIG + " or " +
+              SecretsManagerConfigProviderConfig.SNAPSHOT_KMS_KEY_ID_CONFIG + " must be set."
+      );
+    }
+    return keySource;
+  }
+
+  static SecretKey decodeKey(String value) {
+    final byte[] key;
+    try {
+      key = Base64.getDecoder().decode(value);
+    } catch (IllegalArgumentException ex) {
+      throw new ConfigException(SecretsManagerConfigProviderConfig.SNAPSHOT_KEY_CONFIG, "[hidden]", "Key must be base64 encoded.");
+    }
+    if (key.length != 16 && key.length != 24 && key.length != 32) {
+      throw new ConfigException(SecretsManagerConfigProviderConfig.SNAPSHOT_KEY_CONFIG, "[hidden]", "Key must be 16, 24 or 32 bytes.");
+    }
+    return new SecretKeySpec(key, "AES");
+  }
+
+  /**
+   * Returns the secrets in the snapshot. The file is only read by the first provider, the secrets it
+   * returns end up in the cache shared with the providers that follow. Secrets read from the file are
+   * passed through seal and their plaintext is zeroed. A missing, corrupt or undecryptable snapshot is
+   * logged and treated as empty since the secrets can always be retrieved from Secrets Manager again.
+   */
+  synchronized List<CachedSecret> load(UnaryOperator<CachedSecret> seal) {
+    if (this.loaded) {
+      return Collections.emptyList();
+    }
+    this.loaded = true;
+    List<CachedSecret> result = new ArrayList<>();
+    try (FileChannel channel = FileChannel.open(this.path, StandardOpenOption.READ)) {
+      MappedByteBuffer buffer = channel.map(FileChannel.MapMode.READ_ONLY, 0, channel.size());
+      for (CachedSecret secret : read(buffer)) {
+        CachedSecret sealed = seal.apply(secret);
+        if (sealed != secret) {
+          SecretSealer.destroy(secret);
+        }
+        result.add(sealed);
+      }
+      log.info("load() - Loaded {} secret(s) from '{}'", result.size(), this.path);
+    } catch (NoSuchFileException ex) {
+      log.debug("load() - '{}' does not exist", this.path);
+    } catch (IOException | GeneralSecurityException | RuntimeException ex) {
+      log.warn("load() - Could not read '{}'. Ignoring the snapshot.", this.path, ex);
+    }
+    return result;
+  }
+
+  List<CachedSecret> read(ByteBuffer buffer) throws IOException, GeneralSecurityException {
+    if (buffer.remaining() < 8 || MAGIC != buffer.getInt()) {
+      throw new IOException("Not a secret snapshot.");
+    }
+    byte[] wrappedKey = new byte[buffer.getInt()];
+    buffer.get(wrappedKey);
+    byte[] iv = new byte[IV_LENGTH];
+    buffer.get(iv);
+
+    Cipher cipher = Cipher.getInstance("AES/GCM/NoPadding");
+    cipher.init(Cipher.DECRYPT_MODE, this.keySource.readKey(wrappedKey), new GCMParameterSpec(TAG_LENGTH_BITS, iv));
+    cipher.updateAAD(this.associatedData);
+    ByteBuffer plaintext = ByteBuffer.allocate(cipher.getOutputSize(buffer.remaining()));
+    cipher.doFinal(buffer, plaintext);
+
+    List<CachedSecret> result = new ArrayList<>();
+    try (DataInputStream input = new DataInputStream(
+        new ByteArrayInputStream(plaintext.array(), 0, plaintext.position()))) {
+      int count = input.readInt();
+      for (int i = 0; i < count; i++) {
+        String secretId = input.readUTF();
+        String versionId = input.readBoolean() ? input.readUTF() : null;
+        long fetchedAt = input.readLong();
+        long nextRotationAt = input.readLong();
+        byte type = input.readByte();
+        byte[] payload = new byte[input.readInt()];
+        input.readFully(payload);
+        result.add(
+            TYPE_STRING == type ?
+                new CachedSecret.Utf8String(secretId, versionId, ByteBuffer.wrap(payload), fetchedAt, nextRotationAt) :
+                new CachedSecret(secretId, versionId, null, ByteBuffer.wrap(payload), fetchedAt, nextRotationAt)
+        );
+      }
+    } finally {
+      Arrays.fill(plaintext.array(), (byte) 0);
+    }
+    return result;
+  }
+
+  /**
+   * Schedules a write after a secret was retrieved from Secrets Manager.
+   */
+  synchronized void scheduleWrite() {
+    if (null == this.pendingWrite && !this.executorService.isShutdown()) {
+      this.pendingWrite = this.executorService.schedule(this::writeQuietly, WRITE_DELAY_MS, TimeUnit.MILLISECONDS);
+    }
+  }
+
+  void writeQuietly() {
+    synchronized (this) {
+      this.pendingWrite = null;
+    }
+    try {
+      write();
+    } catch (IOException | GeneralSecurityException | RuntimeException ex) {
+      log.warn("write() - Could not write '{}'", this.path, ex);
+    }
+  }
+
+  synchronized void write() throws IOException, GeneralSecurityException {
+    final long now = System.currentTimeMillis();
+    List<CachedSecret> secrets = new ArrayList<>();
+    for (CachedSecret secret : this.source.get()) {
+      if (!secret.isExpired(now, this.ttlMs)) {
+        secrets.add(secret);
+      }
+    }
+    PlaintextOutputStream plaintext = new PlaintextOutputStream(8192);
+    final ByteBuffer ciphertext;
+    final DataKey dataKey;
+    final byte[] iv = new byte[IV_LENGTH];
+    try (DataOutputStream output = new DataOutputStream(plaintext)) {
+      output.writeInt(secrets.size());
+      for (CachedSecret sealed : secrets) {
+        CachedSecret secret = sealed.open();
+        output.writeUTF(secret.secretId);
+        output.writeBoolean(null != secret.versionId);
+        if (null != secret.versionId) {
+          output.writeUTF(secret.versionId);
+        }
+        output.writeLong(secret.fetchedAt);
+        output.writeLong(secret.nextRotationAt);
+        output.writeByte(secret.isString() ? TYPE_STRING : TYPE_BINARY);
+        final byte[] payload;
+        if (null != secret.secretString) {
+          payload = secret.secretString.getBytes(StandardCharsets.UTF_8);
+        } else {
+          ByteBuffer binary = secret.secretBinary.duplicate();
+          payload = new byte[binary.remaining()];
+          binary.get(payload);
+        }
+        output.writeInt(payload.length);
+        output.write(payload);
+        Arrays.fill(payload, (byte) 0);
+        if (secret != sealed) {
+          SecretSealer.destroy(secret);
+        }
+      }
+      output.flush();
+
+      dataKey = this.keySource.writeKey();
+      this.random.nextBytes(iv);
+      Cipher cipher = Cipher.getInstance("AES/GCM/NoPadding");
+      cipher.init(Cipher.ENCRYPT_MODE, dataKey.key, new GCMParameterSpec(TAG_LENGTH_BITS, iv));
+      cipher.updateAAD(this.associatedData);
+      ByteBuffer input = plaintext.buffer();
+      ciphertext = ByteBuffer.allocate(cipher.getOutputSize(input.remaining()));
+      cipher.doFinal(input, ciphertext);
+      ciphertext.flip();
+    } finally {
+      plaintext.destroy();
+    }
+
+    Path directory = this.path.toAbsolutePath().getParent();
+    Files.createDirectories(directory);
+    Path temp = Files.createTempFile(directory, this.path.getFileName().toString(), ".tmp");
+    try {
+      try (OutputStream outputStream = Files.newOutputStream(temp);
+           DataOutputStream output = new DataOutputStream(outputStream)) {
+        output.writeInt(MAGIC);
+        output.writeInt(dataKey.wrapped.length);
+        output.write(dataKey.wrapped);
+        output.write(iv);
+        output.write(ciphertext.array(), ciphertext.arrayOffset(), ciphertext.remaining());
+      }
+      Files.move(temp, this.path, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+    } finally {
+      Files.deleteIfExists(temp);
+    }
+    log.debug("write() - Wrote {} secret(s) to '{}'", secrets.size(), this.path);
+  }
+
+  @Override
+  public void close() {
+    synchronized (INSTANCES) {
+      if (--this.references > 0) {
+        return;
+      }
+      INSTANCES.remove(this.path, this);
+    }
+    boolean dirty;
+    synchronized (this) {
+      dirty = null != this.pendingWrite && this.pendingWrite.cancel(false);
+      this.pendingWrite = null;
+    }
+    this.executorService.shutdown();
+    if (dirty) {
+      writeQuietly();
+    }
+    this.keySource.close();
+  }
+
+  static class DataKey {
+    final SecretKey key;
+    final byte[] wrapped;
+
+    DataKey(SecretKey key, byte[] wrapped) {
+      this.key = key;
+      this.wrapped = wrapped;
+    }
+  }
+
+  interface KeySource {
+    /**
+     * Returns the key to encrypt a snapshot with along with the bytes needed to recover it.
+     */
+    DataKey writeKey();
+
+    SecretKey readKey(byte[] wrapped);
+
+    default void close() {
+    }
+  }
+
+  static class StaticKeySource implements KeySource {
+    final DataKey dataKey;
+
+    StaticKeySource(SecretKey key) {
+      this.dataKey = new DataKey(key, new byte[0]);
+    }
+
+    @Override
+    public DataKey writeKey() {
+      return this.dataKey;
+    }
+
+    @Override
+    public SecretKey readKey(byte[] wrapped) {
+      return this.dataKey.key;
+    }
+  }
+
+  /**
+   * Envelope encryption with KMS. A data key is generated once and reused for every write, and a
+   * data key recovered from an existing snapshot is reused as well so a restart costs one KMS call.
+   */
+  static class KmsKeySource implements KeySource {
+    final AWSKMS kms;
+    final String keyId;
+    final AWSCredentialsProvider credentialsProvider;
+    DataKey dataKey;
+
+    KmsKeySource(AWSKMS kms, String keyId, AWSCredentialsProvider credentialsProvider) {
+      this.kms = kms;
+      this.keyId = keyId;
+      this.credentialsProvider = credentialsProvider;
+    }
+
+    @Override
+    public synchronized DataKey writeKey() {
+      if (null == this.dataKey) {
+        GenerateDataKeyResult result = this.kms.generateDataKey(
+            new GenerateDataKeyRequest()
+                .withKeyId(this.keyId)
+                .withKeySpec(DataKeySpec.AES_256)
+        );
+        this.dataKey = new DataKey(
+            new SecretKeySpec(bytes(result.getPlaintext()), "AES"),
+            bytes(result.getCiphertextBlob())
+        );
+      }
+      return this.dataKey;
+    }
+
+    @Override
+    public synchronized SecretKey readKey(byte[] wrapped) {
+      if (null != this.dataKey && Arrays.equals(this.dataKey.wrapped, wrapped)) {
+        return this.dataKey.key;
+      }
+      DecryptResult result = this.kms.decrypt(
+          new DecryptRequest()
+              .withKeyId(this.keyId)
+              .withCiphertextBlob(ByteBuffer.wrap(wrapped))
+      );
+      this.dataKey = new DataKey(new SecretKeySpec(bytes(result.getPlaintext()), "AES"), wrapped);
+      return this.dataKey.key;
+    }
+
+    @Override
+    public void close() {
+      this.kms.shutdown();
+      if (null != this.credentialsProvider) {
+        AssumeRoleCredentials.INSTANCE.release(this.credentialsProvider);
+      }
+    }
+
+    static byte[] bytes(ByteBuffer buffer) {
+      ByteBuffer duplicate = buffer.duplicate();
+      byte[] result = new byte[duplicate.remaining()];
+      duplicate.get(result);
+      return result;
+    }
+  }
+}
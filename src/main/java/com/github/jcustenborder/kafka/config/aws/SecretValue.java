@@ -0,0 +1,48 @@
+/**
+ * Copyright © 2021 Jeremy Custenborder (jcustenborder@gmail.com)
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.github.jcustenborder.kafka.config.aws;
+
+import java.nio.ByteBuffer;
+
+/**
+ * Read-only view of a secret handed to a {@link SecretCodec}. The payload is either a SecretString or
+ * bytes. A SecretString may also be supplied as UTF-8 bytes, in which case isString() is true and
+ * secretString() is null.
+ */
+public interface SecretValue {
+  String secretId();
+
+  /**
+   * The version of the secret, or null when it is not known.
+   */
+  String versionId();
+
+  /**
+   * Returns true if the payload was stored as a SecretString.
+   */
+  boolean isString();
+
+  /**
+   * The SecretString, or null when the payload is only available as bytes.
+   */
+  String secretString();
+
+  /**
+   * A read-only view of the payload bytes, or null when secretString() is set. The view is only valid
+   * for the duration of the call to {@link SecretCodec#extract(SecretValue, java.util.Set)}.
+   */
+  ByteBuffer secretBinary();
+}
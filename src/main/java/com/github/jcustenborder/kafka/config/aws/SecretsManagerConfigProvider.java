@@ -15,22 +15,27 @@
  */
 package com.github.jcustenborder.kafka.config.aws;
 
+import com.amazonaws.AmazonClientException;
+import com.amazonaws.AmazonServiceException;
+import com.amazonaws.retry.RetryUtils;
 import com.amazonaws.services.secretsmanager.AWSSecretsManager;
+import com.amazonaws.services.secretsmanager.AWSSecretsManagerAsync;
 import com.amazonaws.services.secretsmanager.model.DecryptionFailureException;
+import com.amazonaws.services.secretsmanager.model.DescribeSecretRequest;
+import com.amazonaws.services.secretsmanager.model.DescribeSecretResult;
 import com.amazonaws.services.secretsmanager.model.GetSecretValueRequest;
 import com.amazonaws.services.secretsmanager.model.GetSecretValueResult;
 import com.amazonaws.services.secretsmanager.model.ResourceNotFoundException;
-import com.fasterxml.jackson.databind.JsonNode;
 import com.fasterxml.jackson.databind.ObjectMapper;
-import com.fasterxml.jackson.databind.node.ObjectNode;
 import com.github.jcustenborder.kafka.connect.utils.config.Description;
 import com.github.jcustenborder.kafka.connect.utils.config.DocumentationSection;
 import com.github.jcustenborder.kafka.connect.utils.config.DocumentationSections;
 import com.github.jcustenborder.kafka.connect.utils.config.DocumentationTip;
-import com.google.common.collect.ImmutableSet;
+import com.google.common.base.Utf8;
 import org.apache.kafka.common.config.ConfigData;
 import org.apache.kafka.common.config.ConfigDef;
 import org.apache.kafka.common.config.ConfigException;
+import org.apache.kafka.common.config.ConfigChangeCallback;
 import org.apache.kafka.common.config.provider.ConfigProvider;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
@@ -38,10 +43,15 @@ import org.slf4j.LoggerFactory;
 import java.io.IOException;
 import java.nio.file.Path;
 import java.nio.file.Paths;
+import java.util.ArrayList;
 import java.util.Collections;
-import java.util.LinkedHashMap;
+import java.util.List;
 import java.util.Map;
 import java.util.Set;
+import java.util.TreeMap;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.ThreadLocalRandom;
 
 @Description("This config provider is used to retrieve secrets from the AWS Secrets Manager service.")
 @DocumentationTip("Config providers can be used with anything that supports the AbstractConfig base class that is shipped with Apache Kafka.")
@@ -58,15 +68,48 @@ import java.util.Set;
             "      \"username\" : \"${secretManager:secret/test/some/connector:username}\",\n" +
             "      \"password\" : \"${secretManager:secret/test/some/connector:password}\"\n" +
             "    }\n" +
-            "")
+            "\n" +
+            "Numbers and booleans are returned as text. Keys that start with `/` are treated as JSON pointers, " +
+            "which allows values nested in objects or arrays to be referenced. For example " +
+            "`${secretManager:secret/test/some/connector:/database/password}`.\n" +
+            ""),
+        @DocumentationSection(title = "Secret Format", text = "Secrets stored in another format are read by setting " +
+            "`secret.codec`, or `secret.codec.overrides` for secrets under a name prefix. `properties` reads the Java properties " +
+            "format and `raw` returns the whole secret under the key `value`. Large secrets can be stored compressed by adding " +
+            "an encoding, for example `raw+gzip` for a gzipped PEM keystore stored as SecretBinary:\n" +
+            "\n" +
+            ".. code-block:: properties\n" +
+            "    :caption: Example Connector Config\n" +
+            "\n" +
+            "    ssl.keystore.key=${secretManager:keystores/my-connector:value}\n" +
+            ""),
+        @DocumentationSection(title = "Metrics", text = "Each provider registers metrics with JMX under the " +
+            "`kafka.config.aws` domain, tagged with a `provider-id`. The `secrets-manager-metrics` type covers cache hits and " +
+            "misses, fetch latency, errors, payload size, parse time and requests in flight. It also reports throttling, " +
+            "retries and the current request limits of the client. The `secrets-manager-secret-metrics` type breaks fetch " +
+            "latency down by `secret-id`.")
     }
 )
 public class SecretsManagerConfigProvider implements ConfigProvider {
   private static final Logger log = LoggerFactory.getLogger(SecretsManagerConfigProvider.class);
+  static final String CURRENT_STAGE = "AWSCURRENT";
   SecretsManagerConfigProviderConfig config;
-  SecretsManagerFactory secretsManagerFactory = new SecretsManagerFactoryImpl();
+  SecretsManagerFactory secretsManagerFactory = SharedSecretsManagerFactory.INSTANCE;
   AWSSecretsManager secretsManager;
+  ClientKey clientKey;
+  SecretCache cache;
+  SecretRefresher refresher;
+  SecretRequestCoalescer coalescer;
+  SecretsManagerThrottle throttle;
+  HedgedSecretFetcher hedger;
+  SecretSnapshot snapshot;
+  SecretsManagerMetrics metrics;
+  AsyncSecretsManager asyncSecretsManager;
+  CompletableFuture<Void> prefetching;
+  List<AWSSecretsManager> replicaSecretsManagers = new ArrayList<>();
   ObjectMapper mapper = new ObjectMapper();
+  SecretCodec codec;
+  Map<String, SecretCodec> codecOverrides = Collections.emptyMap();
 
   @Override
   public ConfigData get(String path) {
@@ -75,46 +118,292 @@ public class SecretsManagerConfigProvider implements ConfigProvider {
 
   @Override
   public ConfigData get(String p, Set<String> keys) {
-    log.info("get() - path = '{}' keys = '{}'", p, keys);
+    log.trace("get() - path = '{}' keys = '{}'", p, keys);
+    CachedSecret secret = secret(secretId(p));
+    return new ConfigData(read(secret, keys), ttl(secret));
+  }
+
+  /**
+   * Returns the TTL for a lookup of the secret. This is at least secret.ttl.ms, extended to the end of
+   * the next rotation window when rotation aware TTLs are enabled, plus a random jitter.
+   */
+  long ttl(CachedSecret secret) {
+    long ttl = this.config.minimumSecretTTL;
+    if (this.config.ttlRotationAware && secret.nextRotationAt > 0) {
+      ttl = Math.max(ttl, secret.nextRotationAt - System.currentTimeMillis());
+    }
+    if (this.config.ttlJitterMs > 0) {
+      ttl += ThreadLocalRandom.current().nextLong(this.config.ttlJitterMs + 1);
+    }
+    return ttl;
+  }
+
+  @Override
+  public void subscribe(String path, Set<String> keys, ConfigChangeCallback callback) {
+    log.trace("subscribe() - path = '{}' keys = '{}'", path, keys);
+    SecretRefresher refresher = this.refresher;
+    if (null == refresher) {
+      throw new IllegalStateException("The provider is not configured or has been closed.");
+    }
+    refresher.subscribe(path, keys, callback);
+  }
+
+  @Override
+  public void unsubscribe(String path, Set<String> keys, ConfigChangeCallback callback) {
+    log.trace("unsubscribe() - path = '{}' keys = '{}'", path, keys);
+    SecretRefresher refresher = this.refresher;
+    if (null != refresher) {
+      refresher.unsubscribe(path, keys, callback);
+    }
+  }
 
+  @Override
+  public void unsubscribeAll() {
+    SecretRefresher refresher = this.refresher;
+    if (null != refresher) {
+      refresher.unsubscribeAll();
+    }
+  }
+
+  String secretId(String p) {
     Path path = (null != this.config.prefix && !this.config.prefix.isEmpty()) ?
         Paths.get(this.config.prefix, p) :
         Paths.get(p);
+    return path.toString();
+  }
 
+  CachedSecret secret(String secretId) {
+    if (null != this.asyncSecretsManager) {
+      try {
+        return secretAsync(secretId).join();
+      } catch (CompletionException ex) {
+        throw translate(ex.getCause(), secretId);
+      }
+    }
+    // Callers waiting on another caller's load count as misses, they did not find the secret cached.
+    final boolean[] missed = new boolean[1];
     try {
-      log.debug("Requesting {} from Secrets Manager", path);
-      GetSecretValueRequest request = new GetSecretValueRequest()
-          .withSecretId(path.toString());
-
-      GetSecretValueResult result = this.secretsManager.getSecretValue(request);
-      ObjectNode node;
-
-      if (null != result.getSecretString()) {
-        node = mapper.readValue(result.getSecretString(), ObjectNode.class);
-      } else if (null != result.getSecretBinary()) {
-        byte[] arr = new byte[result.getSecretBinary().remaining()];
-        result.getSecretBinary().get(arr);
-        node = mapper.readValue(arr, ObjectNode.class);
-      } else {
-        throw new ConfigException("");
+      return this.cache.get(
+          this.clientKey,
+          secretId,
+          this.config.minimumSecretTTL,
+          this.config.maxStaleMs,
+          () -> missed[0] = true,
+          () -> fetch(secretId)
+      );
+    } catch (IOException | RuntimeException ex) {
+      throw translate(ex, secretId);
+    } finally {
+      this.metrics.recordLookup(!missed[0]);
+    }
+  }
+
+  /**
+   * Looks up the secret without blocking. Only used when secret.async.enabled is set.
+   */
+  CompletableFuture<CachedSecret> secretAsync(String secretId) {
+    CompletableFuture<CachedSecret> result = this.cache.getAsync(
+        this.clientKey,
+        secretId,
+        this.config.minimumSecretTTL,
+        this.config.maxStaleMs,
+        () -> fetchAsync(secretId)
+    );
+    this.metrics.recordLookup(result.isDone());
+    return result;
+  }
+
+  RuntimeException translate(Throwable ex, String secretId) {
+    if (ex instanceof DecryptionFailureException) {
+      return createException(ex, "Could not decrypt secret '%s'", secretId);
+    } else if (ex instanceof ResourceNotFoundException) {
+      return createException(ex, "Could not find secret '%s'", secretId);
+    } else if (ex instanceof AmazonServiceException && RetryUtils.isThrottlingException((AmazonServiceException) ex)) {
+      return createException(ex, "Secrets Manager throttled the request for secret '%s'", secretId);
+    } else if (ex instanceof RuntimeException) {
+      return (RuntimeException) ex;
+    }
+    return createException(ex, "Exception thrown while reading secret '%s'", secretId);
+  }
+
+  Map<String, String> read(CachedSecret secret, Set<String> keys) {
+    final long started = System.nanoTime();
+    CachedSecret opened = null;
+    try {
+      opened = secret.open();
+      return codec(secret.secretId).extract(opened, keys);
+    } catch (IOException ex) {
+      throw createException(ex, "Exception thrown while reading secret '%s'", secret.secretId);
+    } finally {
+      if (null != opened && opened != secret) {
+        SecretSealer.destroy(opened);
       }
+      this.metrics.recordParse((System.nanoTime() - started) / 1e6D);
+    }
+  }
 
-      Set<String> propertiesToRead = (null == keys || keys.isEmpty()) ? ImmutableSet.copyOf(node.fieldNames()) : keys;
-      Map<String, String> results = new LinkedHashMap<>(propertiesToRead.size());
-      for (String propertyName : propertiesToRead) {
-        JsonNode propertyNode = node.get(propertyName);
-        if (null != propertyNode && !propertyNode.isNull()) {
-          results.put(propertyName, propertyNode.textValue());
-        }
+  /**
+   * Returns the codec for the longest matching entry in secret.codec.overrides, or secret.codec.
+   */
+  SecretCodec codec(String secretId) {
+    for (Map.Entry<String, SecretCodec> entry : this.codecOverrides.entrySet()) {
+      if (secretId.startsWith(entry.getKey())) {
+        return entry.getValue();
       }
-      return new ConfigData(results, config.minimumSecretTTL);
-    } catch (DecryptionFailureException ex) {
-      throw createException(ex, "Could not decrypt secret '%s'", path);
-    } catch (ResourceNotFoundException ex) {
-      throw createException(ex, "Could not find secret '%s'", path);
-    } catch (IOException ex) {
-      throw createException(ex, "Exception thrown while reading secret '%s'", path);
     }
+    return this.codec;
+  }
+
+  CachedSecret fetch(String secretId) {
+    log.debug("Requesting {} from Secrets Manager", secretId);
+    final long started = System.nanoTime();
+    final GetSecretValueResult result;
+    this.metrics.fetchStarted();
+    try {
+      result = getSecretValue(secretId);
+    } catch (RuntimeException ex) {
+      this.metrics.recordError();
+      throw ex;
+    } finally {
+      this.metrics.fetchCompleted();
+    }
+    return cachedSecret(secretId, result, this.config.ttlRotationAware ? nextRotation(secretId) : 0L, started);
+  }
+
+  CompletableFuture<CachedSecret> fetchAsync(String secretId) {
+    log.debug("Requesting {} from Secrets Manager", secretId);
+    final long started = System.nanoTime();
+    this.metrics.fetchStarted();
+    return this.asyncSecretsManager.getSecretValue(secretId)
+        .whenComplete((result, error) -> {
+          if (null != error) {
+            this.metrics.recordError();
+          }
+          this.metrics.fetchCompleted();
+        })
+        .thenCompose(result -> (this.config.ttlRotationAware ? nextRotationAsync(secretId) : CompletableFuture.completedFuture(0L))
+            .thenApply(nextRotationAt -> cachedSecret(secretId, result, nextRotationAt, started))
+        );
+  }
+
+  CachedSecret cachedSecret(String secretId, GetSecretValueResult result, long nextRotationAt, long started) {
+    if (null == result.getSecretString() && null == result.getSecretBinary()) {
+      throw new ConfigException(
+          String.format("Secret '%s' version '%s' does not have a SecretString or SecretBinary value", secretId, result.getVersionId())
+      );
+    }
+    CachedSecret secret = new CachedSecret(
+        secretId,
+        result.getVersionId(),
+        result.getSecretString(),
+        result.getSecretBinary(),
+        System.currentTimeMillis(),
+        nextRotationAt
+    );
+    this.metrics.recordFetch(
+        secretId,
+        (System.nanoTime() - started) / 1e6D,
+        null != secret.secretString ? Utf8.encodedLength(secret.secretString) : secret.secretBinary.remaining()
+    );
+    CachedSecret sealed = this.cache.seal(secret);
+    if (null != this.snapshot) {
+      this.snapshot.scheduleWrite();
+    }
+    return sealed;
+  }
+
+  GetSecretValueResult getSecretValue(String secretId) {
+    if (null != this.coalescer) {
+      return this.coalescer.getSecretValue(secretId);
+    }
+    GetSecretValueRequest request = new GetSecretValueRequest()
+        .withSecretId(secretId);
+    return this.throttle.execute(() -> (null != this.hedger) ?
+        this.hedger.getSecretValue(request) :
+        this.secretsManager.getSecretValue(request)
+    );
+  }
+
+  /**
+   * Serves the secrets in the snapshot that are still within the ttl and refreshes them in the
+   * background.
+   */
+  void warmFromSnapshot() {
+    final long now = System.currentTimeMillis();
+    int warmed = 0;
+    for (CachedSecret secret : this.snapshot.load(this.cache::seal)) {
+      if (secret.isExpired(now, this.config.minimumSecretTTL)) {
+        continue;
+      }
+      this.cache.warm(this.clientKey, secret, () -> fetch(secret.secretId));
+      warmed++;
+    }
+    log.debug("warmFromSnapshot() - Serving {} secret(s) from the snapshot", warmed);
+  }
+
+  /**
+   * Returns the version id that currently holds the AWSCURRENT stage. DescribeSecret only returns
+   * metadata, so this is much cheaper than retrieving and parsing the secret value.
+   */
+  String currentVersion(String secretId) {
+    DescribeSecretResult result = this.throttle.execute(() -> this.secretsManager.describeSecret(
+        new DescribeSecretRequest().withSecretId(secretId)
+    ));
+    return currentVersion(result.getVersionIdsToStages());
+  }
+
+  static String currentVersion(Map<String, List<String>> versionIdsToStages) {
+    if (null == versionIdsToStages) {
+      return null;
+    }
+    for (Map.Entry<String, List<String>> entry : versionIdsToStages.entrySet()) {
+      if (null != entry.getValue() && entry.getValue().contains(CURRENT_STAGE)) {
+        return entry.getKey();
+      }
+    }
+    return null;
+  }
+
+  /**
+   * Returns the end of the next rotation window of the secret, or 0 when it is not rotated. Failing to
+   * describe the secret only costs the longer TTL, so errors are logged rather than thrown.
+   */
+  long nextRotation(String secretId) {
+    try {
+      DescribeSecretResult result = this.throttle.execute(() -> this.secretsManager.describeSecret(
+          new DescribeSecretRequest().withSecretId(secretId)
+      ));
+      return RotationSchedule.nextRotation(result);
+    } catch (AmazonClientException ex) {
+      log.debug("nextRotation() - Could not read the rotation schedule of '{}'", secretId, ex);
+      return 0L;
+    }
+  }
+
+  CompletableFuture<Long> nextRotationAsync(String secretId) {
+    return this.asyncSecretsManager.describeSecret(secretId)
+        .thenApply(RotationSchedule::nextRotation)
+        .exceptionally(ex -> {
+          log.debug("nextRotationAsync() - Could not read the rotation schedule of '{}'", secretId, ex);
+          return 0L;
+        });
+  }
+
+  /**
+   * Retrieves the secret from Secrets Manager bypassing the cache, then stores the result so that
+   * subsequent calls to get() see the new value.
+   */
+  CachedSecret reload(String secretId) {
+    CachedSecret secret = fetch(secretId);
+    this.cache.put(this.clientKey, secret);
+    return secret;
+  }
+
+  CompletableFuture<CachedSecret> reloadAsync(String secretId) {
+    return fetchAsync(secretId).thenApply(secret -> {
+      this.cache.put(this.clientKey, secret);
+      return secret;
+    });
   }
 
   ConfigException createException(Throwable cause, String message, Object... args) {
@@ -126,15 +415,100 @@ public class SecretsManagerConfigProvider implements ConfigProvider {
 
   @Override
   public void close() throws IOException {
+    if (null != this.refresher) {
+      this.refresher.close();
+      this.refresher = null;
+    }
+    if (null != this.coalescer) {
+      this.coalescer.close();
+      this.coalescer = null;
+    }
+    if (null != this.hedger) {
+      this.hedger.close();
+      this.hedger = null;
+    }
+    if (null != this.snapshot) {
+      this.snapshot.close();
+      this.snapshot = null;
+    }
+    for (AWSSecretsManager replicaSecretsManager : this.replicaSecretsManagers) {
+      this.secretsManagerFactory.release(replicaSecretsManager);
+    }
+    this.replicaSecretsManagers.clear();
     if (null != this.secretsManager) {
-      this.secretsManager.shutdown();
+      this.secretsManagerFactory.release(this.secretsManager);
+      this.secretsManager = null;
+      this.asyncSecretsManager = null;
+    }
+    if (null != this.metrics) {
+      // Left in place so that background reloads finishing after close can still record.
+      this.metrics.close();
     }
   }
 
   @Override
   public void configure(Map<String, ?> settings) {
+    if (null != this.config) {
+      log.debug("configure() - Releasing resources from the previous configuration.");
+      try {
+        close();
+      } catch (IOException ex) {
+        log.warn("configure() - Exception thrown while releasing the previous configuration.", ex);
+      }
+    }
     this.config = new SecretsManagerConfigProviderConfig(settings);
-    this.secretsManager = this.secretsManagerFactory.create(this.config);
+    this.codec = SecretCodec.of(SecretsManagerConfigProviderConfig.CODEC_CONFIG, this.config.codec, this.mapper);
+    // Sorted in reverse so that a prefix is always visited before any shorter prefix that also matches.
+    Map<String, SecretCodec> codecOverrides = new TreeMap<>(Collections.reverseOrder());
+    for (Map.Entry<String, String> entry : this.config.codecOverrides.entrySet()) {
+      codecOverrides.put(
+          entry.getKey(),
+          SecretCodec.of(SecretsManagerConfigProviderConfig.CODEC_OVERRIDES_CONFIG, entry.getValue(), this.mapper)
+      );
+    }
+    this.codecOverrides = codecOverrides;
+    this.clientKey = ClientKey.of(this.config);
+    if (null == this.cache) {
+      this.cache = SecretCache.of(this.config);
+    }
+    this.throttle = SecretsManagerThrottle.of(this.clientKey, this.config);
+    if (this.config.asyncEnabled) {
+      AWSSecretsManagerAsync secretsManager = this.secretsManagerFactory.createAsync(this.config);
+      this.secretsManager = secretsManager;
+      this.asyncSecretsManager = new AsyncSecretsManager(secretsManager, this.throttle);
+    } else {
+      this.secretsManager = this.secretsManagerFactory.create(this.config);
+    }
+    this.metrics = new SecretsManagerMetrics(this.throttle);
+    if (!this.config.replicaRegions.isEmpty()) {
+      List<HedgedSecretFetcher.Region> regions = new ArrayList<>();
+      regions.add(
+          new HedgedSecretFetcher.Region(
+              this.config.region.isEmpty() ? "default" : this.config.region,
+              this.secretsManager
+          )
+      );
+      for (String region : this.config.replicaRegions) {
+        AWSSecretsManager replicaSecretsManager = this.secretsManagerFactory.create(this.config.forRegion(region));
+        this.replicaSecretsManagers.add(replicaSecretsManager);
+        regions.add(new HedgedSecretFetcher.Region(region, replicaSecretsManager));
+      }
+      this.hedger = new HedgedSecretFetcher(regions, this.config.hedgeDelayMs, this.config.hedgePercentile);
+    }
+    if (this.config.batchWindowMs > 0) {
+      this.coalescer = new SecretRequestCoalescer(
+          this.secretsManager,
+          this.throttle,
+          this.config.batchWindowMs,
+          this.config.batchMaxSize
+      );
+    }
+    this.snapshot = SecretSnapshot.of(this.config, this.clientKey, this.cache);
+    if (null != this.snapshot) {
+      warmFromSnapshot();
+    }
+    this.refresher = new SecretRefresher(this, this.config);
+    this.prefetching = new SecretPrefetcher(this, this.config).start();
   }
 
   public static ConfigDef config() {
@@ -20,14 +20,38 @@ import com.amazonaws.auth.BasicAWSCredentials;
 import com.github.jcustenborder.kafka.connect.utils.config.ConfigKeyBuilder;
 import org.apache.kafka.common.config.AbstractConfig;
 import org.apache.kafka.common.config.ConfigDef;
+import org.apache.kafka.common.config.ConfigException;
 
 import java.time.Duration;
+import java.util.Collections;
+import java.util.LinkedHashMap;
+import java.util.List;
 import java.util.Map;
 
 class SecretsManagerConfigProviderConfig extends AbstractConfig {
   public static final String REGION_CONFIG = "aws.region";
   static final String REGION_DOC = "Sets the region to be used by the client. For example `us-west-2`";
 
+  public static final String ENDPOINT_CONFIG = "secrets.manager.endpoint";
+  static final String ENDPOINT_DOC = "Overrides the endpoint of the Secrets Manager client. For example a VPC endpoint or a " +
+      "local stand-in used for testing. When set, `" + REGION_CONFIG + "` is only used to sign requests. The override only " +
+      "applies to `" + REGION_CONFIG + "`, the regions in `aws.replica.regions` use their default endpoints.";
+
+  public static final String REPLICA_REGIONS_CONFIG = "aws.replica.regions";
+  static final String REPLICA_REGIONS_DOC = "Regions that secrets are replicated to. When set, a request that has not been answered " +
+      "within the hedge delay is also sent to the next region and the first successful response is used. Regions that fail are " +
+      "avoided for a while and the region with the lowest latency is used first. Cannot be combined with " +
+      "`secret.batch.window.ms` or `secret.async.enabled`.";
+
+  public static final String HEDGE_DELAY_MS_CONFIG = "secret.hedge.delay.ms";
+  static final String HEDGE_DELAY_MS_DOC = "The amount of time to wait for a region before sending the request to the next region in " +
+      "`" + REPLICA_REGIONS_CONFIG + "`. Setting this to `0` derives the delay from the recent latency of the first region using " +
+      "`secret.hedge.percentile`.";
+
+  public static final String HEDGE_PERCENTILE_CONFIG = "secret.hedge.percentile";
+  static final String HEDGE_PERCENTILE_DOC = "The latency percentile of the first region used as the hedge delay when `" +
+      HEDGE_DELAY_MS_CONFIG + "` is `0`.";
+
   public static final String PREFIX_CONFIG = "secret.prefix";
   static final String PREFIX_DOC = "Sets a prefix that will be added to all paths. For example you can use `staging` or `production` " +
       "and all of the calls to Secrets Manager will be prefixed with that path. This allows the same configuration settings to be used across " +
@@ -37,6 +61,107 @@ class SecretsManagerConfigProviderConfig extends AbstractConfig {
   static final String MIN_TTL_MS_DOC = "The minimum amount of time that a secret should be used. " +
       "After this TTL has expired Secrets Manager will be queried again in case there is an updated configuration.";
 
+  public static final String TTL_JITTER_MS_CONFIG = "secret.ttl.jitter.ms";
+  static final String TTL_JITTER_MS_DOC = "The maximum amount of time that is randomly added to the TTL returned with each lookup. " +
+      "Connectors restart when the TTL of their secrets expires, so this keeps connectors that resolved their secrets during the " +
+      "same rebalance from restarting at the same time.";
+
+  public static final String TTL_ROTATION_AWARE_CONFIG = "secret.ttl.rotation.aware";
+  static final String TTL_ROTATION_AWARE_DOC = "Flag to determine if the TTL returned for secrets with rotation enabled should extend " +
+      "to the end of the next rotation window instead of `" + MIN_TTL_MS_CONFIG + "`. The rotation schedule is read with " +
+      "DescribeSecret each time a secret is retrieved. Secrets without rotation use `" + MIN_TTL_MS_CONFIG + "`.";
+
+  public static final String MAX_STALE_MS_CONFIG = "secret.max.stale.ms";
+  static final String MAX_STALE_MS_DOC = "The amount of time past `" + MIN_TTL_MS_CONFIG + "` that the last retrieved value " +
+      "of a secret can still be returned. Within this window an expired secret is returned immediately and refreshed in the background, " +
+      "and it continues to be returned if Secrets Manager is slow or unavailable. Setting this to `0` disables serving expired secrets.";
+
+  public static final String POLL_INTERVAL_MS_CONFIG = "secret.poll.interval.ms";
+  static final String POLL_INTERVAL_MS_DOC = "The interval at which subscribed secrets are checked for a new version. " +
+      "Only the version metadata of the secret is requested, the value is retrieved only when the version has changed.";
+
+  public static final String POLL_JITTER_MS_CONFIG = "secret.poll.jitter.ms";
+  static final String POLL_JITTER_MS_DOC = "The maximum amount of time that is randomly added to or removed from " +
+      "`" + POLL_INTERVAL_MS_CONFIG + "` for each poll. This keeps a fleet of workers from polling Secrets Manager in lockstep.";
+
+  public static final String PREFETCH_PATHS_CONFIG = "secret.prefetch.paths";
+  static final String PREFETCH_PATHS_DOC = "Paths that are retrieved in the background when the provider is configured so that " +
+      "later lookups are served locally. Paths are resolved relative to `" + PREFIX_CONFIG + "`.";
+
+  public static final String PREFETCH_PREFIX_ENABLED_CONFIG = "secret.prefetch.prefix.enabled";
+  static final String PREFETCH_PREFIX_ENABLED_DOC = "Flag to determine if every secret under `" + PREFIX_CONFIG + "` " +
+      "should be listed and retrieved when the provider is configured.";
+
+  public static final String PREFETCH_CONCURRENCY_CONFIG = "secret.prefetch.concurrency";
+  static final String PREFETCH_CONCURRENCY_DOC = "The maximum number of secrets that are retrieved concurrently while prefetching.";
+
+  public static final String PREFETCH_TIMEOUT_MS_CONFIG = "secret.prefetch.timeout.ms";
+  static final String PREFETCH_TIMEOUT_MS_DOC = "The maximum amount of time to wait for prefetching to complete. " +
+      "Secrets that have not been retrieved by then are retrieved the first time they are requested.";
+
+  public static final String BATCH_WINDOW_MS_CONFIG = "secret.batch.window.ms";
+  static final String BATCH_WINDOW_MS_DOC = "The amount of time to collect distinct secret requests before they are retrieved " +
+      "with a single BatchGetSecretValue call. Setting this to `0` retrieves each secret with its own GetSecretValue call. " +
+      "Cannot be combined with `" + REPLICA_REGIONS_CONFIG + "`.";
+
+  public static final String BATCH_MAX_SIZE_CONFIG = "secret.batch.max.size";
+  static final String BATCH_MAX_SIZE_DOC = "The maximum number of secrets that are retrieved by a single BatchGetSecretValue call. " +
+      "A batch is sent as soon as it reaches this size even if `" + BATCH_WINDOW_MS_CONFIG + "` has not elapsed.";
+
+  public static final String MAX_REQUESTS_PER_SECOND_CONFIG = "secrets.manager.max.rps";
+  static final String MAX_REQUESTS_PER_SECOND_DOC = "The maximum number of requests per second that are sent to Secrets Manager. " +
+      "This limit is shared by every provider in the JVM that uses the same region and credentials. The rate is halved " +
+      "when Secrets Manager throttles a request and recovers gradually as requests succeed.";
+
+  public static final String MAX_CONCURRENCY_CONFIG = "secrets.manager.max.concurrency";
+  static final String MAX_CONCURRENCY_DOC = "The maximum number of concurrent requests to Secrets Manager. " +
+      "This limit is shared by every provider in the JVM that uses the same region and credentials. The limit is halved " +
+      "when Secrets Manager throttles a request and recovers gradually as requests succeed.";
+
+  public static final String SNAPSHOT_PATH_CONFIG = "secret.snapshot.path";
+  static final String SNAPSHOT_PATH_DOC = "Path to a file where an encrypted copy of the retrieved secrets is kept. When the provider " +
+      "is configured, secrets in the file that are younger than `" + MIN_TTL_MS_CONFIG + "` are returned without calling Secrets Manager " +
+      "and are refreshed in the background. Either `secret.snapshot.key` or `secret.snapshot.kms.key.id` must be set. " +
+      "Providers in the same JVM can share a path as long as they use the same credentials and snapshot key. The file holds " +
+      "the secrets in the cache for those credentials, so it is bounded by `secret.cache.max.bytes`. " +
+      "Leaving this empty disables the snapshot.";
+
+  public static final String SNAPSHOT_KEY_CONFIG = "secret.snapshot.key";
+  static final String SNAPSHOT_KEY_DOC = "Base64 encoded 128, 192 or 256 bit AES key used to encrypt `" + SNAPSHOT_PATH_CONFIG + "`.";
+
+  public static final String SNAPSHOT_KMS_KEY_ID_CONFIG = "secret.snapshot.kms.key.id";
+  static final String SNAPSHOT_KMS_KEY_ID_DOC = "KMS key used to generate the data key that encrypts `" + SNAPSHOT_PATH_CONFIG + "`. " +
+      "The encrypted data key is stored in the snapshot. Takes precedence over `" + SNAPSHOT_KEY_CONFIG + "`.";
+
+  public static final String ASYNC_ENABLED_CONFIG = "secret.async.enabled";
+  static final String ASYNC_ENABLED_DOC = "Flag to retrieve secrets with the asynchronous Secrets Manager client. Lookups are " +
+      "queued by the throttle instead of each holding a thread, so prefetching and polling many secrets only uses " +
+      "`secret.async.threads` threads. This cannot be combined with `secret.batch.window.ms` or `aws.replica.regions`.";
+
+  public static final String ASYNC_THREADS_CONFIG = "secret.async.threads";
+  static final String ASYNC_THREADS_DOC = "The number of threads used by the asynchronous client to send requests. " +
+      "The client is shared by providers with the same settings and the first provider determines the number of threads.";
+
+  public static final String CACHE_MAX_BYTES_CONFIG = "secret.cache.max.bytes";
+  static final String CACHE_MAX_BYTES_DOC = "The approximate number of bytes the cached secrets may use. The least recently used " +
+      "secrets are evicted once the budget is exceeded. The cache is shared by every provider in the JVM and the first provider " +
+      "determines the budget.";
+
+  public static final String CACHE_ENCRYPTED_CONFIG = "secret.cache.encrypted";
+  static final String CACHE_ENCRYPTED_DOC = "Flag to keep cached secrets encrypted in off heap memory with a key that only exists " +
+      "in the JVM. Secrets are decrypted while the requested keys are read, so they do not stay on the heap as strings. " +
+      "The first provider determines this for the JVM.";
+
+  public static final String CODEC_CONFIG = "secret.codec";
+  static final String CODEC_DOC = "Format of the secret values. One of `json`, `properties`, `raw` or the class name of a " +
+      "`com.github.jcustenborder.kafka.config.aws.SecretCodec` implementation, optionally followed by the encodings applied to the stored value separated by `+`. " +
+      "Encodings are `base64`, `gzip` and `zstd` and are removed in the order given. For example `properties+gzip`. String " +
+      "values that are compressed are expected to be base64 encoded.";
+
+  public static final String CODEC_OVERRIDES_CONFIG = "secret.codec.overrides";
+  static final String CODEC_OVERRIDES_DOC = "Overrides `" + CODEC_CONFIG + "` for some secrets. Each entry is formatted as " +
+      "`<secret name prefix>=<codec>`, for example `staging/keystores/=raw+gzip`. The longest matching prefix is used.";
+
   public static final String AWS_ACCESS_KEY_ID_CONFIG = "aws.access.key";
   public static final String AWS_ACCESS_KEY_ID_DOC = "AWS access key ID to connect with. If this value is not " +
       "set the `DefaultAWSCredentialsProviderChain <https://docs.aws.amazon.com/AWSJavaSDK/latest/javadoc/com/amazonaws/auth/DefaultAWSCredentialsProviderChain.html>`_ " +
@@ -44,15 +169,65 @@ class SecretsManagerConfigProviderConfig extends AbstractConfig {
   public static final String AWS_SECRET_KEY_CONFIG = "aws.secret.key";
   public static final String AWS_SECRET_KEY_DOC = "AWS secret access key to connect with.";
 
+  public static final String ASSUME_ROLE_ARN_CONFIG = "aws.assume.role.arn";
+  static final String ASSUME_ROLE_ARN_DOC = "ARN of an IAM role to assume with STS. The role is assumed with `" +
+      AWS_ACCESS_KEY_ID_CONFIG + "` if set, otherwise with the default credential chain. Sessions are shared by every " +
+      "provider in the JVM with the same role settings, are requested in the background when the provider is configured and " +
+      "are refreshed in the background before they expire.";
+  public static final String ASSUME_ROLE_EXTERNAL_ID_CONFIG = "aws.assume.role.external.id";
+  static final String ASSUME_ROLE_EXTERNAL_ID_DOC = "External id passed when assuming `" + ASSUME_ROLE_ARN_CONFIG + "`.";
+  public static final String ASSUME_ROLE_SESSION_NAME_CONFIG = "aws.assume.role.session.name";
+  static final String ASSUME_ROLE_SESSION_NAME_DOC = "Session name used when assuming `" + ASSUME_ROLE_ARN_CONFIG + "`.";
+  public static final String ASSUME_ROLE_SESSION_DURATION_SECONDS_CONFIG = "aws.assume.role.session.duration.seconds";
+  static final String ASSUME_ROLE_SESSION_DURATION_SECONDS_DOC = "Duration in seconds of the sessions for `" +
+      ASSUME_ROLE_ARN_CONFIG + "`. This cannot exceed the maximum session duration of the role.";
+
   public final String region;
+  public final String endpoint;
+  public final List<String> replicaRegions;
+  public final long hedgeDelayMs;
+  public final double hedgePercentile;
   public final long minimumSecretTTL;
+  public final long maxStaleMs;
+  public final long ttlJitterMs;
+  public final boolean ttlRotationAware;
   public final AWSCredentials credentials;
+  public final String assumeRoleArn;
+  public final String assumeRoleExternalId;
+  public final String assumeRoleSessionName;
+  public final int assumeRoleSessionDurationSeconds;
   public final String prefix;
+  public final long pollIntervalMs;
+  public final long pollJitterMs;
+  public final List<String> prefetchPaths;
+  public final boolean prefetchPrefixEnabled;
+  public final int prefetchConcurrency;
+  public final long prefetchTimeoutMs;
+  public final long batchWindowMs;
+  public final int batchMaxSize;
+  public final int maxRequestsPerSecond;
+  public final int maxConcurrency;
+  public final String snapshotPath;
+  public final String snapshotKey;
+  public final String snapshotKmsKeyId;
+  public final long cacheMaxBytes;
+  public final boolean cacheEncrypted;
+  public final boolean asyncEnabled;
+  public final int asyncThreads;
+  public final String codec;
+  public final Map<String, String> codecOverrides;
 
   public SecretsManagerConfigProviderConfig(Map<String, ?> settings) {
     super(config(), settings);
     this.minimumSecretTTL = getLong(MIN_TTL_MS_CONFIG);
+    this.maxStaleMs = getLong(MAX_STALE_MS_CONFIG);
+    this.ttlJitterMs = getLong(TTL_JITTER_MS_CONFIG);
+    this.ttlRotationAware = getBoolean(TTL_ROTATION_AWARE_CONFIG);
     this.region = getString(REGION_CONFIG);
+    this.endpoint = getString(ENDPOINT_CONFIG);
+    this.replicaRegions = getList(REPLICA_REGIONS_CONFIG);
+    this.hedgeDelayMs = getLong(HEDGE_DELAY_MS_CONFIG);
+    this.hedgePercentile = getDouble(HEDGE_PERCENTILE_CONFIG);
 
     String awsAccessKeyId = getString(AWS_ACCESS_KEY_ID_CONFIG);
     String awsSecretKey = getPassword(AWS_SECRET_KEY_CONFIG).value();
@@ -62,7 +237,89 @@ class SecretsManagerConfigProviderConfig extends AbstractConfig {
     } else {
       credentials = null;
     }
+    this.assumeRoleArn = getString(ASSUME_ROLE_ARN_CONFIG);
+    this.assumeRoleExternalId = getString(ASSUME_ROLE_EXTERNAL_ID_CONFIG);
+    this.assumeRoleSessionName = getString(ASSUME_ROLE_SESSION_NAME_CONFIG);
+    this.assumeRoleSessionDurationSeconds = getInt(ASSUME_ROLE_SESSION_DURATION_SECONDS_CONFIG);
     prefix = getString(PREFIX_CONFIG);
+    this.pollIntervalMs = getLong(POLL_INTERVAL_MS_CONFIG);
+    this.pollJitterMs = getLong(POLL_JITTER_MS_CONFIG);
+    this.prefetchPaths = getList(PREFETCH_PATHS_CONFIG);
+    this.prefetchPrefixEnabled = getBoolean(PREFETCH_PREFIX_ENABLED_CONFIG);
+    this.prefetchConcurrency = getInt(PREFETCH_CONCURRENCY_CONFIG);
+    this.prefetchTimeoutMs = getLong(PREFETCH_TIMEOUT_MS_CONFIG);
+    this.batchWindowMs = getLong(BATCH_WINDOW_MS_CONFIG);
+    this.batchMaxSize = getInt(BATCH_MAX_SIZE_CONFIG);
+    this.maxRequestsPerSecond = getInt(MAX_REQUESTS_PER_SECOND_CONFIG);
+    this.maxConcurrency = getInt(MAX_CONCURRENCY_CONFIG);
+    this.snapshotPath = getString(SNAPSHOT_PATH_CONFIG);
+    this.snapshotKey = getPassword(SNAPSHOT_KEY_CONFIG).value();
+    this.snapshotKmsKeyId = getString(SNAPSHOT_KMS_KEY_ID_CONFIG);
+    this.cacheMaxBytes = getLong(CACHE_MAX_BYTES_CONFIG);
+    this.cacheEncrypted = getBoolean(CACHE_ENCRYPTED_CONFIG);
+    this.asyncEnabled = getBoolean(ASYNC_ENABLED_CONFIG);
+    this.asyncThreads = getInt(ASYNC_THREADS_CONFIG);
+    if (this.asyncEnabled && (this.batchWindowMs > 0 || !this.replicaRegions.isEmpty())) {
+      throw new ConfigException(
+          ASYNC_ENABLED_CONFIG,
+          true,
+          "Cannot be combined with " + BATCH_WINDOW_MS_CONFIG + " or " + REPLICA_REGIONS_CONFIG + "."
+      );
+    }
+    if (this.batchWindowMs > 0 && !this.replicaRegions.isEmpty()) {
+      throw new ConfigException(
+          BATCH_WINDOW_MS_CONFIG,
+          this.batchWindowMs,
+          "Cannot be combined with " + REPLICA_REGIONS_CONFIG + "."
+      );
+    }
+    this.codec = getString(CODEC_CONFIG);
+    this.codecOverrides = codecOverrides(getList(CODEC_OVERRIDES_CONFIG));
+  }
+
+  static Map<String, String> codecOverrides(List<String> entries) {
+    Map<String, String> result = new LinkedHashMap<>();
+    for (String entry : entries) {
+      int index = entry.lastIndexOf('=');
+      if (index < 0) {
+        throw new ConfigException(CODEC_OVERRIDES_CONFIG, entry, "Entries must be formatted as <secret name prefix>=<codec>.");
+      }
+      result.put(entry.substring(0, index).trim(), entry.substring(index + 1).trim());
+    }
+    return Collections.unmodifiableMap(result);
+  }
+
+  /**
+   * Rejects unknown encodings in secret.codec and secret.codec.overrides when the config is parsed.
+   */
+  static class CodecValidator implements ConfigDef.Validator {
+    @Override
+    @SuppressWarnings("unchecked")
+    public void ensureValid(String name, Object value) {
+      if (value instanceof List) {
+        for (String codec : codecOverrides((List<String>) value).values()) {
+          SecretCodec.validate(name, codec);
+        }
+      } else {
+        SecretCodec.validate(name, (String) value);
+      }
+    }
+
+    @Override
+    public String toString() {
+      return "json, properties, raw or a class name, optionally followed by +base64, +gzip or +zstd";
+    }
+  }
+
+  /**
+   * Returns a copy of this config that targets another region. The endpoint override belongs to the
+   * configured region, so the copy uses the default endpoint of the replica.
+   */
+  SecretsManagerConfigProviderConfig forRegion(String region) {
+    Map<String, Object> settings = new LinkedHashMap<>(originals());
+    settings.put(REGION_CONFIG, region);
+    settings.put(ENDPOINT_CONFIG, "");
+    return new SecretsManagerConfigProviderConfig(settings);
   }
 
   public static ConfigDef config() {
@@ -73,6 +330,32 @@ class SecretsManagerConfigProviderConfig extends AbstractConfig {
                 .importance(ConfigDef.Importance.HIGH)
                 .defaultValue("")
                 .build()
+        ).define(
+            ConfigKeyBuilder.of(ENDPOINT_CONFIG, ConfigDef.Type.STRING)
+                .documentation(ENDPOINT_DOC)
+                .importance(ConfigDef.Importance.LOW)
+                .defaultValue("")
+                .build()
+        ).define(
+            ConfigKeyBuilder.of(REPLICA_REGIONS_CONFIG, ConfigDef.Type.LIST)
+                .documentation(REPLICA_REGIONS_DOC)
+                .importance(ConfigDef.Importance.LOW)
+                .defaultValue(Collections.emptyList())
+                .build()
+        ).define(
+            ConfigKeyBuilder.of(HEDGE_DELAY_MS_CONFIG, ConfigDef.Type.LONG)
+                .documentation(HEDGE_DELAY_MS_DOC)
+                .importance(ConfigDef.Importance.LOW)
+                .defaultValue(0L)
+                .validator(ConfigDef.Range.atLeast(0L))
+                .build()
+        ).define(
+            ConfigKeyBuilder.of(HEDGE_PERCENTILE_CONFIG, ConfigDef.Type.DOUBLE)
+                .documentation(HEDGE_PERCENTILE_DOC)
+                .importance(ConfigDef.Importance.LOW)
+                .defaultValue(95D)
+                .validator(ConfigDef.Range.between(1D, 100D))
+                .build()
         ).define(
             ConfigKeyBuilder.of(AWS_ACCESS_KEY_ID_CONFIG, ConfigDef.Type.STRING)
                 .documentation(AWS_ACCESS_KEY_ID_DOC)
@@ -85,6 +368,31 @@ class SecretsManagerConfigProviderConfig extends AbstractConfig {
                 .importance(ConfigDef.Importance.HIGH)
                 .defaultValue("")
                 .build()
+        ).define(
+            ConfigKeyBuilder.of(ASSUME_ROLE_ARN_CONFIG, ConfigDef.Type.STRING)
+                .documentation(ASSUME_ROLE_ARN_DOC)
+                .importance(ConfigDef.Importance.MEDIUM)
+                .defaultValue("")
+                .build()
+        ).define(
+            ConfigKeyBuilder.of(ASSUME_ROLE_EXTERNAL_ID_CONFIG, ConfigDef.Type.STRING)
+                .documentation(ASSUME_ROLE_EXTERNAL_ID_DOC)
+                .importance(ConfigDef.Importance.MEDIUM)
+                .defaultValue("")
+                .build()
+        ).define(
+            ConfigKeyBuilder.of(ASSUME_ROLE_SESSION_NAME_CONFIG, ConfigDef.Type.STRING)
+                .documentation(ASSUME_ROLE_SESSION_NAME_DOC)
+                .importance(ConfigDef.Importance.LOW)
+                .defaultValue("kafka-config-provider-aws")
+                .build()
+        ).define(
+            ConfigKeyBuilder.of(ASSUME_ROLE_SESSION_DURATION_SECONDS_CONFIG, ConfigDef.Type.INT)
+                .documentation(ASSUME_ROLE_SESSION_DURATION_SECONDS_DOC)
+                .importance(ConfigDef.Importance.LOW)
+                .defaultValue(3600)
+                .validator(ConfigDef.Range.between(900, 43200))
+                .build()
         )
         .define(
             ConfigKeyBuilder.of(PREFIX_CONFIG, ConfigDef.Type.STRING)
@@ -99,6 +407,152 @@ class SecretsManagerConfigProviderConfig extends AbstractConfig {
                 .defaultValue(Duration.ofMinutes(5L).toMillis())
                 .validator(ConfigDef.Range.atLeast(1000L))
                 .build()
+        ).define(
+            ConfigKeyBuilder.of(TTL_JITTER_MS_CONFIG, ConfigDef.Type.LONG)
+                .documentation(TTL_JITTER_MS_DOC)
+                .importance(ConfigDef.Importance.LOW)
+                .defaultValue(0L)
+                .validator(ConfigDef.Range.atLeast(0L))
+                .build()
+        ).define(
+            ConfigKeyBuilder.of(TTL_ROTATION_AWARE_CONFIG, ConfigDef.Type.BOOLEAN)
+                .documentation(TTL_ROTATION_AWARE_DOC)
+                .importance(ConfigDef.Importance.LOW)
+                .defaultValue(false)
+                .build()
+        ).define(
+            ConfigKeyBuilder.of(MAX_STALE_MS_CONFIG, ConfigDef.Type.LONG)
+                .documentation(MAX_STALE_MS_DOC)
+                .importance(ConfigDef.Importance.LOW)
+                .defaultValue(0L)
+                .validator(ConfigDef.Range.atLeast(0L))
+                .build()
+        ).define(
+            ConfigKeyBuilder.of(POLL_INTERVAL_MS_CONFIG, ConfigDef.Type.LONG)
+                .documentation(POLL_INTERVAL_MS_DOC)
+                .importance(ConfigDef.Importance.LOW)
+                .defaultValue(Duration.ofMinutes(5L).toMillis())
+                .validator(ConfigDef.Range.atLeast(1000L))
+                .build()
+        ).define(
+            ConfigKeyBuilder.of(POLL_JITTER_MS_CONFIG, ConfigDef.Type.LONG)
+                .documentation(POLL_JITTER_MS_DOC)
+                .importance(ConfigDef.Importance.LOW)
+                .defaultValue(Duration.ofSeconds(30L).toMillis())
+                .validator(ConfigDef.Range.atLeast(0L))
+                .build()
+        ).define(
+            ConfigKeyBuilder.of(PREFETCH_PATHS_CONFIG, ConfigDef.Type.LIST)
+                .documentation(PREFETCH_PATHS_DOC)
+                .importance(ConfigDef.Importance.LOW)
+                .defaultValue(Collections.emptyList())
+                .build()
+        ).define(
+            ConfigKeyBuilder.of(PREFETCH_PREFIX_ENABLED_CONFIG, ConfigDef.Type.BOOLEAN)
+                .documentation(PREFETCH_PREFIX_ENABLED_DOC)
+                .importance(ConfigDef.Importance.LOW)
+                .defaultValue(false)
+                .build()
+        ).define(
+            ConfigKeyBuilder.of(PREFETCH_CONCURRENCY_CONFIG, ConfigDef.Type.INT)
+                .documentation(PREFETCH_CONCURRENCY_DOC)
+                .importance(ConfigDef.Importance.LOW)
+                .defaultValue(8)
+                .validator(ConfigDef.Range.between(1, 128))
+                .build()
+        ).define(
+            ConfigKeyBuilder.of(PREFETCH_TIMEOUT_MS_CONFIG, ConfigDef.Type.LONG)
+                .documentation(PREFETCH_TIMEOUT_MS_DOC)
+                .importance(ConfigDef.Importance.LOW)
+                .defaultValue(Duration.ofSeconds(30L).toMillis())
+                .validator(ConfigDef.Range.atLeast(0L))
+                .build()
+        ).define(
+            ConfigKeyBuilder.of(BATCH_WINDOW_MS_CONFIG, ConfigDef.Type.LONG)
+                .documentation(BATCH_WINDOW_MS_DOC)
+                .importance(ConfigDef.Importance.LOW)
+                .defaultValue(0L)
+                .validator(ConfigDef.Range.between(0L, 1000L))
+                .build()
+        ).define(
+            ConfigKeyBuilder.of(BATCH_MAX_SIZE_CONFIG, ConfigDef.Type.INT)
+                .documentation(BATCH_MAX_SIZE_DOC)
+                .importance(ConfigDef.Importance.LOW)
+                .defaultValue(SecretRequestCoalescer.MAXIMUM_BATCH_SIZE)
+                .validator(ConfigDef.Range.between(1, SecretRequestCoalescer.MAXIMUM_BATCH_SIZE))
+                .build()
+        ).define(
+            ConfigKeyBuilder.of(MAX_REQUESTS_PER_SECOND_CONFIG, ConfigDef.Type.INT)
+                .documentation(MAX_REQUESTS_PER_SECOND_DOC)
+                .importance(ConfigDef.Importance.LOW)
+                .defaultValue(100)
+                .validator(ConfigDef.Range.atLeast(1))
+                .build()
+        ).define(
+            ConfigKeyBuilder.of(MAX_CONCURRENCY_CONFIG, ConfigDef.Type.INT)
+                .documentation(MAX_CONCURRENCY_DOC)
+                .importance(ConfigDef.Importance.LOW)
+                .defaultValue(16)
+                .validator(ConfigDef.Range.atLeast(1))
+                .build()
+        ).define(
+            ConfigKeyBuilder.of(SNAPSHOT_PATH_CONFIG, ConfigDef.Type.STRING)
+                .documentation(SNAPSHOT_PATH_DOC)
+                .importance(ConfigDef.Importance.LOW)
+                .defaultValue("")
+                .build()
+        ).define(
+            ConfigKeyBuilder.of(SNAPSHOT_KEY_CONFIG, ConfigDef.Type.PASSWORD)
+                .documentation(SNAPSHOT_KEY_DOC)
+                .importance(ConfigDef.Importance.LOW)
+                .defaultValue("")
+                .build()
+        ).define(
+            ConfigKeyBuilder.of(SNAPSHOT_KMS_KEY_ID_CONFIG, ConfigDef.Type.STRING)
+                .documentation(SNAPSHOT_KMS_KEY_ID_DOC)
+                .importance(ConfigDef.Importance.LOW)
+                .defaultValue("")
+                .build()
+        ).define(
+            ConfigKeyBuilder.of(CACHE_MAX_BYTES_CONFIG, ConfigDef.Type.LONG)
+                .documentation(CACHE_MAX_BYTES_DOC)
+                .importance(ConfigDef.Importance.LOW)
+                .defaultValue(SecretCache.DEFAULT_MAXIMUM_BYTES)
+                .validator(ConfigDef.Range.atLeast(1024L))
+                .build()
+        ).define(
+            ConfigKeyBuilder.of(CACHE_ENCRYPTED_CONFIG, ConfigDef.Type.BOOLEAN)
+                .documentation(CACHE_ENCRYPTED_DOC)
+                .importance(ConfigDef.Importance.LOW)
+                .defaultValue(true)
+                .build()
+        ).define(
+            ConfigKeyBuilder.of(ASYNC_ENABLED_CONFIG, ConfigDef.Type.BOOLEAN)
+                .documentation(ASYNC_ENABLED_DOC)
+                .importance(ConfigDef.Importance.LOW)
+                .defaultValue(false)
+                .build()
+        ).define(
+            ConfigKeyBuilder.of(ASYNC_THREADS_CONFIG, ConfigDef.Type.INT)
+                .documentation(ASYNC_THREADS_DOC)
+                .importance(ConfigDef.Importance.LOW)
+                .defaultValue(4)
+                .validator(ConfigDef.Range.atLeast(1))
+                .build()
+        ).define(
+            ConfigKeyBuilder.of(CODEC_CONFIG, ConfigDef.Type.STRING)
+                .documentation(CODEC_DOC)
+                .importance(ConfigDef.Importance.MEDIUM)
+                .defaultValue("json")
+                .validator(new CodecValidator())
+                .build()
+        ).define(
+            ConfigKeyBuilder.of(CODEC_OVERRIDES_CONFIG, ConfigDef.Type.LIST)
+                .documentation(CODEC_OVERRIDES_DOC)
+                .importance(ConfigDef.Importance.LOW)
+                .defaultValue(Collections.emptyList())
+                .validator(new CodecValidator())
+                .build()
         );
   }
 
@@ -16,7 +16,17 @@
 package com.github.jcustenborder.kafka.config.aws;
 
 import com.amazonaws.services.secretsmanager.AWSSecretsManager;
+import com.amazonaws.services.secretsmanager.AWSSecretsManagerAsync;
 
 interface SecretsManagerFactory {
   AWSSecretsManager create(SecretsManagerConfigProviderConfig config);
+
+  /**
+   * Creates a client for secret.async.enabled. The client can be released with release().
+   */
+  AWSSecretsManagerAsync createAsync(SecretsManagerConfigProviderConfig config);
+
+  default void release(AWSSecretsManager secretsManager) {
+    secretsManager.shutdown();
+  }
 }
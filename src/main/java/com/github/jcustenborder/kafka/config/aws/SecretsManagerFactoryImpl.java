@@ -15,22 +15,112 @@
  */
 package com.github.jcustenborder.kafka.config.aws;
 
-import com.amazonaws.auth.AWSStaticCredentialsProvider;
+import com.amazonaws.ClientConfiguration;
+import com.amazonaws.auth.AWSCredentialsProvider;
+import com.amazonaws.client.builder.AwsClientBuilder;
+import com.amazonaws.retry.PredefinedRetryPolicies;
+import com.amazonaws.retry.RetryPolicy;
+import com.amazonaws.retry.RetryUtils;
 import com.amazonaws.services.secretsmanager.AWSSecretsManager;
+import com.amazonaws.services.secretsmanager.AWSSecretsManagerAsync;
+import com.amazonaws.services.secretsmanager.AWSSecretsManagerAsyncClientBuilder;
 import com.amazonaws.services.secretsmanager.AWSSecretsManagerClientBuilder;
+import com.google.common.util.concurrent.ThreadFactoryBuilder;
+
+import java.util.Collections;
+import java.util.IdentityHashMap;
+import java.util.Map;
+import java.util.concurrent.Executors;
 
 class SecretsManagerFactoryImpl implements SecretsManagerFactory {
+  static final String DEFAULT_SIGNING_REGION = "us-east-1";
+
+  final Map<AWSSecretsManager, AWSCredentialsProvider> credentialsProviders = Collections.synchronizedMap(new IdentityHashMap<>());
+
   @Override
   public AWSSecretsManager create(SecretsManagerConfigProviderConfig config) {
-    AWSSecretsManagerClientBuilder builder = AWSSecretsManagerClientBuilder.standard();
+    AWSCredentialsProvider credentialsProvider = AssumeRoleCredentials.INSTANCE.acquire(config);
+    AWSSecretsManager secretsManager = configure(AWSSecretsManagerClientBuilder.standard(), config, credentialsProvider).build();
+    if (null != credentialsProvider) {
+      this.credentialsProviders.put(secretsManager, credentialsProvider);
+    }
+    return secretsManager;
+  }
+
+  /**
+   * The SDK runs requests on a fixed pool of secret.async.threads daemon threads, which is shut down
+   * with the client.
+   */
+  @Override
+  public AWSSecretsManagerAsync createAsync(SecretsManagerConfigProviderConfig config) {
+    AWSCredentialsProvider credentialsProvider = AssumeRoleCredentials.INSTANCE.acquire(config);
+    AWSSecretsManagerAsyncClientBuilder builder = configure(AWSSecretsManagerAsyncClientBuilder.standard(), config, credentialsProvider)
+        .withExecutorFactory(() -> Executors.newFixedThreadPool(
+            config.asyncThreads,
+            new ThreadFactoryBuilder()
+                .setDaemon(true)
+                .setNameFormat("secrets-manager-async-%d")
+                .build()
+        ));
+    AWSSecretsManagerAsync secretsManager = builder.build();
+    if (null != credentialsProvider) {
+      this.credentialsProviders.put(secretsManager, credentialsProvider);
+    }
+    return secretsManager;
+  }
+
+  static <B extends AwsClientBuilder<B, ?>> B configure(B builder, SecretsManagerConfigProviderConfig config, AWSCredentialsProvider credentialsProvider) {
+    return configure(
+        builder.withClientConfiguration(clientConfiguration(config)),
+        config.region,
+        config.endpoint,
+        credentialsProvider
+    );
+  }
 
-    if (null != config.region && !config.region.isEmpty()) {
-      builder = builder.withRegion(config.region);
+  /**
+   * Applies the region, endpoint and credentials. Shared with the clients of other AWS services.
+   */
+  static <B extends AwsClientBuilder<B, ?>> B configure(B builder, String region, String endpoint, AWSCredentialsProvider credentialsProvider) {
+    if (null != endpoint && !endpoint.isEmpty()) {
+      builder = builder.withEndpointConfiguration(
+          new AwsClientBuilder.EndpointConfiguration(
+              endpoint,
+              region.isEmpty() ? DEFAULT_SIGNING_REGION : region
+          )
+      );
+    } else if (null != region && !region.isEmpty()) {
+      builder = builder.withRegion(region);
+    }
+    if (null != credentialsProvider) {
+      builder = builder.withCredentials(credentialsProvider);
     }
-    if (null != config.credentials) {
-      builder = builder.withCredentials(new AWSStaticCredentialsProvider(config.credentials));
+    return builder;
+  }
+
+  @Override
+  public void release(AWSSecretsManager secretsManager) {
+    secretsManager.shutdown();
+    AWSCredentialsProvider credentialsProvider = this.credentialsProviders.remove(secretsManager);
+    if (null != credentialsProvider) {
+      AssumeRoleCredentials.INSTANCE.release(credentialsProvider);
     }
+  }
 
-    return builder.build();
+  /**
+   * Throttled requests are retried by SecretsManagerThrottle, which also lowers the request rate.
+   * Letting the SDK retry them as well would multiply the load on an already throttled service.
+   */
+  static ClientConfiguration clientConfiguration(SecretsManagerConfigProviderConfig config) {
+    RetryPolicy retryPolicy = new RetryPolicy(
+        (request, exception, retriesAttempted) -> !RetryUtils.isThrottlingException(exception) &&
+            PredefinedRetryPolicies.DEFAULT_RETRY_CONDITION.shouldRetry(request, exception, retriesAttempted),
+        PredefinedRetryPolicies.DEFAULT_BACKOFF_STRATEGY,
+        PredefinedRetryPolicies.DEFAULT_MAX_ERROR_RETRY,
+        true
+    );
+    return new ClientConfiguration()
+        .withMaxConnections(config.maxConcurrency)
+        .withRetryPolicy(retryPolicy);
   }
 }
@@ -0,0 +1,211 @@
+/**
+ * Copyright © 2021 Jeremy Custenborder (jcustenborder@gmail.com)
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.github.jcustenborder.kafka.config.aws;
+
+import org.apache.kafka.common.MetricName;
+import org.apache.kafka.common.metrics.JmxReporter;
+import org.apache.kafka.common.metrics.KafkaMetricsContext;
+import org.apache.kafka.common.metrics.MetricConfig;
+import org.apache.kafka.common.metrics.Metrics;
+import org.apache.kafka.common.metrics.Sensor;
+import org.apache.kafka.common.metrics.stats.Avg;
+import org.apache.kafka.common.metrics.stats.CumulativeCount;
+import org.apache.kafka.common.metrics.stats.CumulativeSum;
+import org.apache.kafka.common.metrics.stats.Max;
+import org.apache.kafka.common.metrics.stats.Percentile;
+import org.apache.kafka.common.metrics.stats.Percentiles;
+import org.apache.kafka.common.metrics.stats.Rate;
+import org.apache.kafka.common.utils.Time;
+
+import java.io.Closeable;
+import java.util.Collections;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Kafka metrics for a provider, reported through JMX under `kafka.config.aws`. Each provider is
+ * tagged with its own id. Throttling, retry and request limit metrics come from the throttle, which
+ * is shared by every provider using the same client settings, so they describe the client as a whole.
+ * Fetch latency is also tracked per secret id. Those sensors expire after an hour without a fetch so
+ * secrets that are no longer used do not accumulate.
+ */
+class SecretsManagerMetrics implements Closeable {
+  static final String JMX_PREFIX = "kafka.config.aws";
+  static final String GROUP = "secrets-manager-metrics";
+  static final String SECRET_GROUP = "secrets-manager-secret-metrics";
+  static final String PROVIDER_TAG = "provider-id";
+  static final String SECRET_TAG = "secret-id";
+  static final long SECRET_SENSOR_EXPIRATION_SECONDS = TimeUnit.HOURS.toSeconds(1L);
+  static final int PERCENTILES_SIZE_BYTES = 4000;
+  static final double MAX_LATENCY_MS = 10000D;
+  static final AtomicInteger SEQUENCE = new AtomicInteger();
+
+  final Metrics metrics;
+  final Map<String, String> tags;
+  final Sensor hitSensor;
+  final Sensor missSensor;
+  final Sensor fetchSensor;
+  final Sensor errorSensor;
+  final Sensor payloadSensor;
+  final Sensor parseSensor;
+  final AtomicInteger inFlight = new AtomicInteger();
+
+  SecretsManagerMetrics(SecretsManagerThrottle throttle) {
+    this(
+        new Metrics(
+            new MetricConfig(),
+            Collections.singletonList(new JmxReporter()),
+            Time.SYSTEM,
+            true,
+            new KafkaMetricsContext(JMX_PREFIX)
+        ),
+        throttle
+    );
+  }
+
+  SecretsManagerMetrics(Metrics metrics, SecretsManagerThrottle throttle) {
+    this.metrics = metrics;
+    this.tags = Collections.singletonMap(PROVIDER_TAG, Integer.toString(SEQUENCE.incrementAndGet()));
+
+    final MetricName hitTotal = name("cache-hit-total", "The number of lookups served from the cache.");
+    final MetricName missTotal = name("cache-miss-total", "The number of lookups that did not find the secret cached, including those that waited for a request already in flight.");
+    this.hitSensor = this.metrics.sensor("cache-hit");
+    this.hitSensor.add(name("cache-hit-rate", "The number of lookups per second served from the cache."), new Rate());
+    this.hitSensor.add(hitTotal, new CumulativeCount());
+    this.missSensor = this.metrics.sensor("cache-miss");
+    this.missSensor.add(name("cache-miss-rate", "The number of lookups per second that did not find the secret cached."), new Rate());
+    this.missSensor.add(missTotal, new CumulativeCount());
+    this.metrics.addMetric(
+        name("cache-hit-ratio", "The fraction of lookups served from the cache."),
+        (config, now) -> {
+          double hits = (Double) this.metrics.metric(hitTotal).metricValue();
+          double misses = (Double) this.metrics.metric(missTotal).metricValue();
+          return hits + misses > 0 ? hits / (hits + misses) : 0D;
+        }
+    );
+
+    this.fetchSensor = this.metrics.sensor("fetch");
+    this.fetchSensor.add(name("fetch-rate", "The number of secrets retrieved from Secrets Manager per second."), new Rate());
+    this.fetchSensor.add(name("fetch-total", "The number of secrets retrieved from Secrets Manager."), new CumulativeCount());
+    this.fetchSensor.add(name("fetch-latency-avg", "The average time in ms to retrieve a secret."), new Avg());
+    this.fetchSensor.add(name("fetch-latency-max", "The maximum time in ms to retrieve a secret."), new Max());
+    this.errorSensor = this.metrics.sensor("fetch-error");
+    this.errorSensor.add(name("fetch-error-rate", "The number of failed secret retrievals per second."), new Rate());
+    this.errorSensor.add(name("fetch-error-total", "The number of failed secret retrievals."), new CumulativeCount());
+    this.metrics.addMetric(
+        name("fetch-in-flight", "The number of secrets this provider is currently retrieving."),
+        (config, now) -> this.inFlight.get()
+    );
+
+    this.payloadSensor = this.metrics.sensor("payload-bytes");
+    this.payloadSensor.add(name("payload-bytes-avg", "The average size in bytes of a retrieved secret."), new Avg());
+    this.payloadSensor.add(name("payload-bytes-max", "The maximum size in bytes of a retrieved secret."), new Max());
+    this.payloadSensor.add(name("payload-bytes-total", "The total size in bytes of the retrieved secrets."), new CumulativeSum());
+    this.parseSensor = this.metrics.sensor("parse-time");
+    this.parseSensor.add(name("parse-time-avg", "The average time in ms to extract the requested keys from a secret."), new Avg());
+    this.parseSensor.add(name("parse-time-max", "The maximum time in ms to extract the requested keys from a secret."), new Max());
+
+    this.metrics.addMetric(
+        name("throttled-total", "The number of requests throttled by Secrets Manager for the client."),
+        (config, now) -> throttle.throttledCount.get()
+    );
+    this.metrics.addMetric(
+        name("retry-total", "The number of throttled requests that were retried for the client."),
+        (config, now) -> throttle.retryCount.get()
+    );
+    this.metrics.addMetric(
+        name("requests-in-flight", "The number of requests to Secrets Manager currently in flight for the client."),
+        (config, now) -> throttle.inFlight()
+    );
+    this.metrics.addMetric(
+        name("request-rate-limit", "The current limit on requests per second for the client."),
+        (config, now) -> throttle.rate()
+    );
+    this.metrics.addMetric(
+        name("request-concurrency-limit", "The current limit on concurrent requests for the client."),
+        (config, now) -> throttle.concurrency()
+    );
+  }
+
+  MetricName name(String name, String description) {
+    return this.metrics.metricName(name, GROUP, description, this.tags);
+  }
+
+  void recordLookup(boolean hit) {
+    (hit ? this.hitSensor : this.missSensor).record();
+  }
+
+  void fetchStarted() {
+    this.inFlight.incrementAndGet();
+  }
+
+  void fetchCompleted() {
+    this.inFlight.decrementAndGet();
+  }
+
+  void recordFetch(String secretId, double latencyMs, long payloadBytes) {
+    this.fetchSensor.record(latencyMs);
+    this.payloadSensor.record(payloadBytes);
+    secretSensor(secretId).record(latencyMs);
+  }
+
+  void recordError() {
+    this.errorSensor.record();
+  }
+
+  void recordParse(double parseMs) {
+    this.parseSensor.record(parseMs);
+  }
+
+  synchronized Sensor secretSensor(String secretId) {
+    final String sensorName = "fetch-latency." + secretId;
+    Sensor sensor = this.metrics.getSensor(sensorName);
+    if (null != sensor) {
+      return sensor;
+    }
+    Map<String, String> secretTags = new LinkedHashMap<>(this.tags);
+    secretTags.put(SECRET_TAG, secretId);
+    sensor = this.metrics.sensor(sensorName, null, SECRET_SENSOR_EXPIRATION_SECONDS);
+    sensor.add(
+        this.metrics.metricName("fetch-latency-avg", SECRET_GROUP, "The average time in ms to retrieve the secret.", secretTags),
+        new Avg()
+    );
+    sensor.add(
+        new Percentiles(
+            PERCENTILES_SIZE_BYTES,
+            0D,
+            MAX_LATENCY_MS,
+            Percentiles.BucketSizing.LINEAR,
+            new Percentile(
+                this.metrics.metricName("fetch-latency-p50", SECRET_GROUP, "The median time in ms to retrieve the secret.", secretTags),
+                50D
+            ),
+            new Percentile(
+                this.metrics.metricName("fetch-latency-p99", SECRET_GROUP, "The 99th percentile time in ms to retrieve the secret.", secretTags),
+                99D
+            )
+        )
+    );
+    return sensor;
+  }
+
+  @Override
+  public void close() {
+    this.metrics.close();
+  }
+}
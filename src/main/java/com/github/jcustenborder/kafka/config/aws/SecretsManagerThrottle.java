@@ -0,0 +1,276 @@
+/**
+ * Copyright © 2021 Jeremy Custenborder (jcustenborder@gmail.com)
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.github.jcustenborder.kafka.config.aws;
+
+import com.amazonaws.AbortedException;
+import com.amazonaws.AmazonServiceException;
+import com.amazonaws.retry.RetryUtils;
+import com.google.common.util.concurrent.RateLimiter;
+import com.google.common.util.concurrent.ThreadFactoryBuilder;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.util.ArrayDeque;
+import java.util.Queue;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.function.Supplier;
+
+/**
+ * Limits the rate and concurrency of calls to Secrets Manager. One throttle is shared by every
+ * provider in the JVM that uses the same client settings, so the limits apply to the worker as a whole.
+ * Both limits are adjusted with AIMD. A throttling response halves them, and each successful call
+ * raises them again until the configured maximums are reached. The limits are halved at most once per
+ * generation of calls, so a burst of calls that were in flight together and are all throttled only
+ * counts once. Throttled calls are retried with jittered exponential backoff.
+ * <p>
+ * Calls made with executeAsync() never block the calling thread. Calls waiting for a free slot are
+ * queued and started as slots are released, and waiting for the rate limiter or a backoff is
+ * scheduled on a single shared thread.
+ */
+class SecretsManagerThrottle {
+  private static final Logger log = LoggerFactory.getLogger(SecretsManagerThrottle.class);
+  static final ConcurrentMap<ClientKey, SecretsManagerThrottle> INSTANCES = new ConcurrentHashMap<>();
+  static final int MAX_ATTEMPTS = 5;
+  static final long BASE_BACKOFF_MS = 100L;
+  static final long MAX_BACKOFF_MS = 5000L;
+  static final ScheduledExecutorService SCHEDULER = Executors.newSingleThreadScheduledExecutor(
+      new ThreadFactoryBuilder()
+          .setDaemon(true)
+          .setNameFormat("secrets-manager-throttle-%d")
+          .build()
+  );
+
+  final double maxRate;
+  final int maxConcurrency;
+  final RateLimiter rateLimiter;
+  final AtomicLong throttledCount = new AtomicLong();
+  final AtomicLong retryCount = new AtomicLong();
+  final Queue<Runnable> waiting = new ArrayDeque<>();
+  double rate;
+  double concurrency;
+  int inFlight;
+  /**
+   * Incremented each time the limits are reduced. Calls started before that only reduce them again
+   * once a call started after the reduction is throttled.
+   */
+  long generation;
+
+  SecretsManagerThrottle(double maxRate, int maxConcurrency) {
+    this.maxRate = maxRate;
+    this.maxConcurrency = maxConcurrency;
+    this.rate = maxRate;
+    this.concurrency = maxConcurrency;
+    this.rateLimiter = RateLimiter.create(maxRate);
+  }
+
+  /**
+   * Returns the throttle shared by providers with the same client settings. The first provider to be
+   * configured determines the limits.
+   */
+  static SecretsManagerThrottle of(ClientKey key, SecretsManagerConfigProviderConfig config) {
+    return INSTANCES.computeIfAbsent(
+        key,
+        k -> new SecretsManagerThrottle(config.maxRequestsPerSecond, config.maxConcurrency)
+    );
+  }
+
+  <T> T execute(Supplier<T> call) {
+    for (int attempt = 1; ; attempt++) {
+      acquire();
+      final long generation = generation();
+      try {
+        T result = call.get();
+        onSuccess();
+        return result;
+      } catch (AmazonServiceException ex) {
+        if (!RetryUtils.isThrottlingException(ex)) {
+          throw ex;
+        }
+        onThrottled(generation);
+        if (attempt >= MAX_ATTEMPTS) {
+          throw ex;
+        }
+      } finally {
+        release();
+      }
+      this.retryCount.incrementAndGet();
+      backoff(attempt);
+    }
+  }
+
+  /**
+   * Asynchronous version of execute(). The call is started once a slot and a permit are available and
+   * must not block.
+   */
+  <T> CompletableFuture<T> executeAsync(Supplier<CompletableFuture<T>> call) {
+    CompletableFuture<T> result = new CompletableFuture<>();
+    attemptAsync(call, result, 1);
+    return result;
+  }
+
+  <T> void attemptAsync(Supplier<CompletableFuture<T>> call, CompletableFuture<T> result, int attempt) {
+    acquireSlotAsync(() -> acquirePermitAsync(() -> {
+      final long generation = generation();
+      CompletableFuture<T> future;
+      try {
+        future = call.get();
+      } catch (RuntimeException ex) {
+        future = new CompletableFuture<>();
+        future.completeExceptionally(ex);
+      }
+      future.whenComplete((value, error) -> {
+        release();
+        if (null == error) {
+          onSuccess();
+          result.complete(value);
+          return;
+        }
+        Throwable cause = error instanceof CompletionException && null != error.getCause() ? error.getCause() : error;
+        if (cause instanceof AmazonServiceException && RetryUtils.isThrottlingException((AmazonServiceException) cause)) {
+          onThrottled(generation);
+          if (attempt < MAX_ATTEMPTS) {
+            this.retryCount.incrementAndGet();
+            long delay = backoffDelay(attempt);
+            log.debug("attemptAsync() - Retrying throttled request in {} ms", delay);
+            SCHEDULER.schedule(() -> attemptAsync(call, result, attempt + 1), delay, TimeUnit.MILLISECONDS);
+            return;
+          }
+        }
+        result.completeExceptionally(cause);
+      });
+    }));
+  }
+
+  void acquireSlotAsync(Runnable task) {
+    synchronized (this) {
+      if (this.inFlight >= Math.max(1, (int) this.concurrency)) {
+        this.waiting.add(task);
+        return;
+      }
+      this.inFlight++;
+    }
+    task.run();
+  }
+
+  void acquirePermitAsync(Runnable task) {
+    if (this.rateLimiter.tryAcquire()) {
+      task.run();
+      return;
+    }
+    long delay = Math.max(1L, (long) (1000D / rate()));
+    SCHEDULER.schedule(() -> acquirePermitAsync(task), delay, TimeUnit.MILLISECONDS);
+  }
+
+  /**
+   * Hands free slots to queued asynchronous calls. They are started on the scheduler so that a
+   * completing call never runs the next one on its own stack.
+   */
+  synchronized void dispatch() {
+    while (!this.waiting.isEmpty() && this.inFlight < Math.max(1, (int) this.concurrency)) {
+      this.inFlight++;
+      SCHEDULER.execute(this.waiting.poll());
+    }
+  }
+
+  void acquire() {
+    acquireSlot();
+    this.rateLimiter.acquire();
+  }
+
+  synchronized void acquireSlot() {
+    while (this.inFlight >= Math.max(1, (int) this.concurrency)) {
+      try {
+        wait();
+      } catch (InterruptedException ex) {
+        Thread.currentThread().interrupt();
+        throw new AbortedException(ex);
+      }
+    }
+    this.inFlight++;
+  }
+
+  synchronized void release() {
+    this.inFlight--;
+    notifyAll();
+    dispatch();
+  }
+
+  synchronized void onSuccess() {
+    if (this.concurrency < this.maxConcurrency) {
+      this.concurrency = Math.min(this.maxConcurrency, this.concurrency + 1D / this.concurrency);
+      notifyAll();
+      dispatch();
+    }
+    if (this.rate < this.maxRate) {
+      this.rate = Math.min(this.maxRate, this.rate + Math.max(1D, this.maxRate / 100D));
+      this.rateLimiter.setRate(this.rate);
+    }
+  }
+
+  synchronized void onThrottled(long generation) {
+    this.throttledCount.incrementAndGet();
+    if (generation != this.generation) {
+      log.debug("onThrottled() - Limits were already reduced since the request was started.");
+      return;
+    }
+    this.generation++;
+    this.concurrency = Math.max(1D, this.concurrency / 2D);
+    this.rate = Math.max(1D, this.rate / 2D);
+    this.rateLimiter.setRate(this.rate);
+    log.warn("onThrottled() - Secrets Manager throttled a request. Reducing to {} request(s) per second and {} concurrent request(s).",
+        this.rate, (int) this.concurrency);
+  }
+
+  synchronized long generation() {
+    return this.generation;
+  }
+
+  synchronized int inFlight() {
+    return this.inFlight;
+  }
+
+  synchronized double rate() {
+    return this.rate;
+  }
+
+  synchronized int concurrency() {
+    return (int) this.concurrency;
+  }
+
+  static long backoffDelay(int attempt) {
+    long ceiling = Math.min(MAX_BACKOFF_MS, BASE_BACKOFF_MS << attempt);
+    return ThreadLocalRandom.current().nextLong(ceiling / 2, ceiling + 1);
+  }
+
+  void backoff(int attempt) {
+    long delay = backoffDelay(attempt);
+    log.debug("backoff() - Retrying throttled request in {} ms", delay);
+    try {
+      Thread.sleep(delay);
+    } catch (InterruptedException ex) {
+      Thread.currentThread().interrupt();
+      throw new AbortedException(ex);
+    }
+  }
+}
@@ -0,0 +1,100 @@
+/**
+ * Copyright © 2021 Jeremy Custenborder (jcustenborder@gmail.com)
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.github.jcustenborder.kafka.config.aws;
+
+import com.amazonaws.services.secretsmanager.AWSSecretsManager;
+import com.amazonaws.services.secretsmanager.AWSSecretsManagerAsync;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.util.HashMap;
+import java.util.IdentityHashMap;
+import java.util.Map;
+import java.util.function.Supplier;
+
+/**
+ * JVM wide registry of clients. Kafka creates a config provider for every AbstractConfig that
+ * declares config.providers, so a worker can end up with many providers configured identically.
+ * Those providers share a single client, and with it the connection pool and credential resolution.
+ * The client is shut down once the last provider using it releases it.
+ */
+class SharedSecretsManagerFactory implements SecretsManagerFactory {
+  private static final Logger log = LoggerFactory.getLogger(SharedSecretsManagerFactory.class);
+  static final SharedSecretsManagerFactory INSTANCE = new SharedSecretsManagerFactory(new SecretsManagerFactoryImpl());
+
+  final SecretsManagerFactory factory;
+  final Map<ClientKey, Reference> references = new HashMap<>();
+  final Map<ClientKey, Reference> asyncReferences = new HashMap<>();
+  final Map<AWSSecretsManager, Reference> clients = new IdentityHashMap<>();
+
+  SharedSecretsManagerFactory(SecretsManagerFactory factory) {
+    this.factory = factory;
+  }
+
+  @Override
+  public synchronized AWSSecretsManager create(SecretsManagerConfigProviderConfig config) {
+    return acquire(this.references, ClientKey.of(config), () -> this.factory.create(config));
+  }
+
+  @Override
+  public synchronized AWSSecretsManagerAsync createAsync(SecretsManagerConfigProviderConfig config) {
+    return (AWSSecretsManagerAsync) acquire(this.asyncReferences, ClientKey.of(config), () -> this.factory.createAsync(config));
+  }
+
+  AWSSecretsManager acquire(Map<ClientKey, Reference> references, ClientKey key, Supplier<AWSSecretsManager> factory) {
+    Reference reference = references.get(key);
+    if (null == reference) {
+      log.debug("acquire() - Creating client for {}", key);
+      reference = new Reference(key, factory.get(), references);
+      references.put(key, reference);
+      this.clients.put(reference.client, reference);
+    }
+    reference.count++;
+    log.trace("acquire() - {} now has {} reference(s)", key, reference.count);
+    return reference.client;
+  }
+
+  @Override
+  public synchronized void release(AWSSecretsManager secretsManager) {
+    Reference reference = this.clients.get(secretsManager);
+    if (null == reference) {
+      log.warn("release() - Client was not created by this factory. Shutting down.");
+      this.factory.release(secretsManager);
+      return;
+    }
+    reference.count--;
+    log.trace("release() - {} now has {} reference(s)", reference.key, reference.count);
+    if (reference.count <= 0) {
+      log.debug("release() - Shutting down client for {}", reference.key);
+      reference.references.remove(reference.key);
+      this.clients.remove(reference.client);
+      this.factory.release(reference.client);
+    }
+  }
+
+  static class Reference {
+    final ClientKey key;
+    final AWSSecretsManager client;
+    final Map<ClientKey, Reference> references;
+    int count;
+
+    Reference(ClientKey key, AWSSecretsManager client, Map<ClientKey, Reference> references) {
+      this.key = key;
+      this.client = client;
+      this.references = references;
+    }
+  }
+}
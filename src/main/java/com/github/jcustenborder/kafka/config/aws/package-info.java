@@ -15,8 +15,8 @@
  */
 @PluginOwner("jcustenborder")
 @PluginName("kafka-config-provider-aws")
-@Introduction("This plugin provides integration with the AWS Secrets Manager service.")
-@Title("AWS Secrets Manager Config Provider")
+@Introduction("This plugin provides integration with the AWS Secrets Manager service and AWS Systems Manager Parameter Store.")
+@Title("AWS Config Providers")
 package com.github.jcustenborder.kafka.config.aws;
 
 import com.github.jcustenborder.kafka.connect.utils.config.Introduction;
@@ -0,0 +1,92 @@
+/**
+ * Copyright © 2021 Jeremy Custenborder (jcustenborder@gmail.com)
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.github.jcustenborder.kafka.config.aws;
+
+import com.amazonaws.auth.AWSCredentialsProvider;
+import com.amazonaws.auth.AWSStaticCredentialsProvider;
+import com.amazonaws.auth.STSAssumeRoleSessionCredentialsProvider;
+import com.google.common.collect.ImmutableMap;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertNotSame;
+import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.junit.jupiter.api.Assertions.assertSame;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+public class AssumeRoleCredentialsTest {
+  AssumeRoleCredentials credentials;
+
+  @BeforeEach
+  public void beforeEach() {
+    this.credentials = new AssumeRoleCredentials();
+  }
+
+  static SecretsManagerConfigProviderConfig config(Map<String, String> overrides) {
+    Map<String, String> settings = new LinkedHashMap<>();
+    settings.put(SecretsManagerConfigProviderConfig.REGION_CONFIG, "us-west-2");
+    settings.put(SecretsManagerConfigProviderConfig.AWS_ACCESS_KEY_ID_CONFIG, "access");
+    settings.put(SecretsManagerConfigProviderConfig.AWS_SECRET_KEY_CONFIG, "secret");
+    settings.putAll(overrides);
+    return new SecretsManagerConfigProviderConfig(settings);
+  }
+
+  @Test
+  public void withoutRole() {
+    assertTrue(this.credentials.acquire(config(ImmutableMap.of())) instanceof AWSStaticCredentialsProvider);
+    assertNull(
+        this.credentials.acquire(
+            new SecretsManagerConfigProviderConfig(ImmutableMap.of())
+        )
+    );
+  }
+
+  @Test
+  public void sessionsAreShared() {
+    final String roleArn = "arn:aws:iam::123456789012:role/config-provider";
+    AWSCredentialsProvider first = this.credentials.acquire(
+        config(ImmutableMap.of(SecretsManagerConfigProviderConfig.ASSUME_ROLE_ARN_CONFIG, roleArn))
+    );
+    AWSCredentialsProvider second = this.credentials.acquire(
+        config(ImmutableMap.of(SecretsManagerConfigProviderConfig.ASSUME_ROLE_ARN_CONFIG, roleArn))
+    );
+    AWSCredentialsProvider otherExternalId = this.credentials.acquire(
+        config(
+            ImmutableMap.of(
+                SecretsManagerConfigProviderConfig.ASSUME_ROLE_ARN_CONFIG, roleArn,
+                SecretsManagerConfigProviderConfig.ASSUME_ROLE_EXTERNAL_ID_CONFIG, "external"
+            )
+        )
+    );
+    assertTrue(first instanceof STSAssumeRoleSessionCredentialsProvider);
+    assertSame(first, second);
+    assertNotSame(first, otherExternalId);
+    AssumeRoleCredentials.Reference reference = this.credentials.providers.get(first);
+
+    this.credentials.release(first);
+    this.credentials.release(otherExternalId);
+    assertTrue(this.credentials.providers.containsKey(second));
+    assertFalse(reference.executorService.isShutdown());
+    this.credentials.release(second);
+    assertTrue(reference.executorService.isShutdown());
+    assertTrue(this.credentials.providers.isEmpty());
+    assertTrue(this.credentials.references.isEmpty());
+  }
+}
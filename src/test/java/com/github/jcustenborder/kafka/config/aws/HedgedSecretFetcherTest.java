@@ -0,0 +1,204 @@
+/**
+ * Copyright © 2021 Jeremy Custenborder (jcustenborder@gmail.com)
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.github.jcustenborder.kafka.config.aws;
+
+import com.amazonaws.AmazonServiceException;
+import com.amazonaws.services.secretsmanager.AWSSecretsManager;
+import com.amazonaws.services.secretsmanager.model.AWSSecretsManagerException;
+import com.amazonaws.services.secretsmanager.model.GetSecretValueRequest;
+import com.amazonaws.services.secretsmanager.model.GetSecretValueResult;
+import com.amazonaws.services.secretsmanager.model.ResourceNotFoundException;
+import com.google.common.collect.ImmutableList;
+import com.google.common.collect.ImmutableMap;
+import org.apache.kafka.common.config.ConfigException;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.never;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.when;
+
+public class HedgedSecretFetcherTest {
+  AWSSecretsManager primary;
+  AWSSecretsManager replica;
+  HedgedSecretFetcher.Region primaryRegion;
+  HedgedSecretFetcher.Region replicaRegion;
+  HedgedSecretFetcher fetcher;
+  CountDownLatch release = new CountDownLatch(1);
+
+  @BeforeEach
+  public void beforeEach() {
+    this.primary = mock(AWSSecretsManager.class);
+    this.replica = mock(AWSSecretsManager.class);
+    this.primaryRegion = new HedgedSecretFetcher.Region("us-west-2", this.primary);
+    this.replicaRegion = new HedgedSecretFetcher.Region("us-east-1", this.replica);
+    this.fetcher = new HedgedSecretFetcher(ImmutableList.of(this.primaryRegion, this.replicaRegion), 50L, 95D);
+  }
+
+  @AfterEach
+  public void afterEach() {
+    this.release.countDown();
+    this.fetcher.close();
+  }
+
+  static GetSecretValueResult result(String region) {
+    return new GetSecretValueResult()
+        .withName("foo")
+        .withSecretString("{\"region\": \"" + region + "\"}");
+  }
+
+  static AWSSecretsManagerException serverError() {
+    AWSSecretsManagerException exception = new AWSSecretsManagerException("Internal failure");
+    exception.setErrorType(AmazonServiceException.ErrorType.Service);
+    exception.setStatusCode(500);
+    return exception;
+  }
+
+  @Test
+  public void hedgesSlowPrimary() {
+    when(this.primary.getSecretValue(any())).thenAnswer(invocationOnMock -> {
+      this.release.await(10, TimeUnit.SECONDS);
+      return result("us-west-2");
+    });
+    when(this.replica.getSecretValue(any())).thenReturn(result("us-east-1"));
+    GetSecretValueResult result = this.fetcher.getSecretValue(new GetSecretValueRequest().withSecretId("foo"));
+    assertEquals(result("us-east-1"), result);
+  }
+
+  /**
+   * The losing request is cancelled with an interrupt while the SDK is blocked on the network. The
+   * SDK reports that as an AbortedException, which must not bench a healthy region.
+   */
+  @Test
+  public void cancelledRequestDoesNotFailRegion() throws Exception {
+    try (SecretsManagerStandIn slow = new SecretsManagerStandIn(); SecretsManagerStandIn fast = new SecretsManagerStandIn()) {
+      slow.latency(1000L).put("foo", "{\"region\": \"us-west-2\"}");
+      fast.put("foo", "{\"region\": \"us-east-1\"}");
+      SecretsManagerFactory factory = new SecretsManagerFactoryImpl();
+      AWSSecretsManager slowClient = factory.create(standInConfig(slow));
+      AWSSecretsManager fastClient = factory.create(standInConfig(fast));
+      HedgedSecretFetcher.Region slowRegion = new HedgedSecretFetcher.Region("us-west-2", slowClient);
+      HedgedSecretFetcher.Region fastRegion = new HedgedSecretFetcher.Region("us-east-1", fastClient);
+      HedgedSecretFetcher hedged = new HedgedSecretFetcher(ImmutableList.of(slowRegion, fastRegion), 50L, 95D);
+      try {
+        GetSecretValueResult result = hedged.getSecretValue(new GetSecretValueRequest().withSecretId("foo"));
+        assertEquals("{\"region\": \"us-east-1\"}", result.getSecretString());
+      } finally {
+        hedged.close();
+        assertTrue(hedged.executorService.awaitTermination(10, TimeUnit.SECONDS));
+        slowClient.shutdown();
+        fastClient.shutdown();
+      }
+      assertEquals(1L, slow.calls("GetSecretValue"));
+      assertEquals(0L, slowRegion.failedUntil);
+      assertEquals(1, slowRegion.latency.count(), "the lost request should be recorded");
+      assertTrue(slowRegion.latency.percentile(50D) >= 50D);
+    }
+  }
+
+  @Test
+  public void replicaConfig() {
+    assertThrows(ConfigException.class, () -> new SecretsManagerConfigProviderConfig(
+        ImmutableMap.of(
+            SecretsManagerConfigProviderConfig.REPLICA_REGIONS_CONFIG, "us-east-1",
+            SecretsManagerConfigProviderConfig.BATCH_WINDOW_MS_CONFIG, "10"
+        )
+    ));
+    SecretsManagerConfigProviderConfig config = new SecretsManagerConfigProviderConfig(
+        ImmutableMap.of(
+            SecretsManagerConfigProviderConfig.REGION_CONFIG, "us-west-2",
+            SecretsManagerConfigProviderConfig.ENDPOINT_CONFIG, "https://vpce.example.com",
+            SecretsManagerConfigProviderConfig.REPLICA_REGIONS_CONFIG, "us-east-1"
+        )
+    );
+    SecretsManagerConfigProviderConfig replica = config.forRegion("us-east-1");
+    assertEquals("us-east-1", replica.region);
+    assertEquals("", replica.endpoint);
+  }
+
+  static SecretsManagerConfigProviderConfig standInConfig(SecretsManagerStandIn standIn) {
+    return new SecretsManagerConfigProviderConfig(
+        ImmutableMap.of(
+            SecretsManagerConfigProviderConfig.ENDPOINT_CONFIG, standIn.endpoint(),
+            SecretsManagerConfigProviderConfig.AWS_ACCESS_KEY_ID_CONFIG, "hedge",
+            SecretsManagerConfigProviderConfig.AWS_SECRET_KEY_CONFIG, "secret"
+        )
+    );
+  }
+
+  @Test
+  public void failsOverOnServerError() {
+    when(this.primary.getSecretValue(any())).thenThrow(serverError());
+    when(this.replica.getSecretValue(any())).thenReturn(result("us-east-1"));
+    GetSecretValueResult result = this.fetcher.getSecretValue(new GetSecretValueRequest().withSecretId("foo"));
+    assertEquals(result("us-east-1"), result);
+    assertTrue(this.primaryRegion.failedUntil > System.currentTimeMillis());
+    assertEquals(this.replicaRegion, this.fetcher.candidates().get(0));
+  }
+
+  @Test
+  public void doesNotFailOverWhenSecretIsMissing() {
+    when(this.primary.getSecretValue(any())).thenThrow(new ResourceNotFoundException("not found"));
+    assertThrows(
+        ResourceNotFoundException.class,
+        () -> this.fetcher.getSecretValue(new GetSecretValueRequest().withSecretId("foo"))
+    );
+    verify(this.replica, never()).getSecretValue(any());
+  }
+
+  @Test
+  public void allRegionsFail() {
+    when(this.primary.getSecretValue(any())).thenThrow(serverError());
+    when(this.replica.getSecretValue(any())).thenThrow(serverError());
+    assertThrows(
+        AWSSecretsManagerException.class,
+        () -> this.fetcher.getSecretValue(new GetSecretValueRequest().withSecretId("foo"))
+    );
+  }
+
+  @Test
+  public void unmeasuredRegionsComeLast() {
+    for (long i = 0; i < 10; i++) {
+      this.primaryRegion.latency.record(200L);
+    }
+    assertEquals(ImmutableList.of(this.primaryRegion, this.replicaRegion), this.fetcher.candidates());
+    this.replicaRegion.latency.record(20L);
+    assertEquals(ImmutableList.of(this.replicaRegion, this.primaryRegion), this.fetcher.candidates());
+  }
+
+  @Test
+  public void adaptiveDelay() {
+    HedgedSecretFetcher adaptive = new HedgedSecretFetcher(ImmutableList.of(this.primaryRegion), 0L, 90D);
+    try {
+      assertEquals(HedgedSecretFetcher.DEFAULT_DELAY_MS, adaptive.delay(this.primaryRegion));
+      for (long i = 1; i <= 100; i++) {
+        this.primaryRegion.latency.record(i);
+      }
+      assertEquals(90L, adaptive.delay(this.primaryRegion));
+    } finally {
+      adaptive.close();
+    }
+  }
+}
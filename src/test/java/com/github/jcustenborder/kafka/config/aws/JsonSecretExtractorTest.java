@@ -0,0 +1,105 @@
+/**
+ * Copyright © 2021 Jeremy Custenborder (jcustenborder@gmail.com)
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.github.jcustenborder.kafka.config.aws;
+
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.google.common.collect.ImmutableMap;
+import com.google.common.collect.ImmutableSet;
+import org.junit.jupiter.api.Test;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.util.Map;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+
+public class JsonSecretExtractorTest {
+  static final String JSON = "{\n" +
+      "  \"username\": \"asdf\",\n" +
+      "  \"port\": 5432,\n" +
+      "  \"ssl\": true,\n" +
+      "  \"empty\": null,\n" +
+      "  \"a/b\": \"slash\",\n" +
+      "  \"database\": {\n" +
+      "    \"hosts\": [\"one\", \"two\"],\n" +
+      "    \"credentials\": {\"password\": \"secret\"}\n" +
+      "  }\n" +
+      "}";
+  JsonSecretExtractor extractor = new JsonSecretExtractor(new ObjectMapper());
+
+  static CachedSecret string(String value) {
+    return new CachedSecret("test", "1", value, null, System.currentTimeMillis());
+  }
+
+  @Test
+  public void all() throws IOException {
+    Map<String, String> expected = ImmutableMap.of(
+        "username", "asdf",
+        "port", "5432",
+        "ssl", "true",
+        "a/b", "slash",
+        "database", "{\"hosts\":[\"one\",\"two\"],\"credentials\":{\"password\":\"secret\"}}"
+    );
+    assertEquals(expected, this.extractor.extract(string(JSON), ImmutableSet.of()));
+  }
+
+  @Test
+  public void keys() throws IOException {
+    Map<String, String> expected = ImmutableMap.of(
+        "port", "5432",
+        "username", "asdf",
+        "a/b", "slash"
+    );
+    assertEquals(expected, this.extractor.extract(string(JSON), ImmutableSet.of("port", "username", "missing", "empty", "a/b")));
+  }
+
+  @Test
+  public void pointers() throws IOException {
+    Map<String, String> expected = ImmutableMap.of(
+        "/database/credentials/password", "secret",
+        "/database/hosts/1", "two",
+        "/database/hosts", "[\"one\",\"two\"]"
+    );
+    assertEquals(
+        expected,
+        this.extractor.extract(
+            string(JSON),
+            ImmutableSet.of("/database/credentials/password", "/database/hosts/1", "/database/hosts")
+        )
+    );
+  }
+
+  @Test
+  public void binary() throws IOException {
+    byte[] bytes = ("xx" + JSON).getBytes(StandardCharsets.UTF_8);
+    ByteBuffer heap = ByteBuffer.wrap(bytes, 2, bytes.length - 2).slice();
+    ByteBuffer direct = ByteBuffer.allocateDirect(bytes.length);
+    direct.put(bytes).flip();
+    direct.position(2);
+    for (ByteBuffer buffer : new ByteBuffer[]{heap, direct}) {
+      CachedSecret secret = new CachedSecret("test", "1", null, buffer, System.currentTimeMillis());
+      assertEquals(ImmutableMap.of("username", "asdf"), this.extractor.extract(secret, ImmutableSet.of("username")));
+      assertEquals(ImmutableMap.of("username", "asdf"), this.extractor.extract(secret, ImmutableSet.of("username")));
+    }
+  }
+
+  @Test
+  public void notAnObject() {
+    assertThrows(IOException.class, () -> this.extractor.extract(string("[1, 2]"), ImmutableSet.of()));
+  }
+}
@@ -0,0 +1,160 @@
+/**
+ * Copyright © 2021 Jeremy Custenborder (jcustenborder@gmail.com)
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.github.jcustenborder.kafka.config.aws;
+
+import com.amazonaws.services.simplesystemsmanagement.AWSSimpleSystemsManagement;
+import com.amazonaws.services.simplesystemsmanagement.model.GetParametersByPathRequest;
+import com.amazonaws.services.simplesystemsmanagement.model.GetParametersByPathResult;
+import com.amazonaws.services.simplesystemsmanagement.model.Parameter;
+import com.amazonaws.services.simplesystemsmanagement.model.ParameterNotFoundException;
+import com.google.common.collect.ImmutableMap;
+import com.google.common.collect.ImmutableSet;
+import org.apache.kafka.common.config.ConfigData;
+import org.apache.kafka.common.config.ConfigException;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.mockito.ArgumentCaptor;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.times;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.when;
+
+public class ParameterStoreConfigProviderTest {
+  AWSSimpleSystemsManagement parameterStore;
+  ParameterStoreConfigProvider provider;
+
+  @BeforeEach
+  public void beforeEach() {
+    this.parameterStore = mock(AWSSimpleSystemsManagement.class);
+    this.provider = new ParameterStoreConfigProvider();
+    this.provider.parameterStoreFactory = mock(ParameterStoreFactory.class);
+    when(this.provider.parameterStoreFactory.create(any())).thenReturn(this.parameterStore);
+    this.provider.configure(
+        ImmutableMap.of(ParameterStoreConfigProviderConfig.PREFIX_CONFIG, "staging")
+    );
+  }
+
+  @AfterEach
+  public void afterEach() throws IOException {
+    this.provider.close();
+  }
+
+  /**
+   * Answers GetParametersByPath with count parameters named key0..keyN under the hierarchy, one page
+   * of MAX_RESULTS at a time.
+   */
+  void parameters(String hierarchy, int count) {
+    when(this.parameterStore.getParametersByPath(any())).thenAnswer(invocation -> {
+      GetParametersByPathRequest request = invocation.getArgument(0);
+      int start = null == request.getNextToken() ? 0 : Integer.parseInt(request.getNextToken());
+      int end = Math.min(count, start + request.getMaxResults());
+      List<Parameter> page = new ArrayList<>();
+      for (int i = start; i < end; i++) {
+        page.add(new Parameter().withName(hierarchy + "/key" + i).withValue("value" + i));
+      }
+      return new GetParametersByPathResult()
+          .withParameters(page)
+          .withNextToken(end < count ? Integer.toString(end) : null);
+    });
+  }
+
+  @Test
+  public void hierarchy() {
+    assertEquals("/staging/connectors/foo", this.provider.hierarchy("connectors/foo"));
+    assertEquals("/staging/connectors/foo", this.provider.hierarchy("/connectors/foo/"));
+  }
+
+  @Test
+  public void paginated() {
+    parameters("/staging/connectors/foo", 25);
+    ConfigData configData = this.provider.get("connectors/foo");
+    assertEquals(25, configData.data().size());
+    assertEquals("value24", configData.data().get("key24"));
+    ArgumentCaptor<GetParametersByPathRequest> captor = ArgumentCaptor.forClass(GetParametersByPathRequest.class);
+    verify(this.parameterStore, times(3)).getParametersByPath(captor.capture());
+    GetParametersByPathRequest request = captor.getValue();
+    assertEquals("/staging/connectors/foo", request.getPath());
+    assertTrue(request.getWithDecryption());
+    assertTrue(request.getRecursive());
+  }
+
+  @Test
+  public void keysAreServedFromCache() {
+    parameters("/staging/connectors/foo", 12);
+    ConfigData first = this.provider.get("connectors/foo", ImmutableSet.of("key1", "key11", "missing"));
+    assertEquals(ImmutableMap.of("key1", "value1", "key11", "value11"), first.data());
+    ConfigData second = this.provider.get("connectors/foo", ImmutableSet.of("key2"));
+    assertEquals(ImmutableMap.of("key2", "value2"), second.data());
+    verify(this.parameterStore, times(2)).getParametersByPath(any());
+  }
+
+  @Test
+  public void empty() {
+    parameters("/staging/connectors/foo", 0);
+    assertThrows(ConfigException.class, () -> this.provider.get("connectors/foo"));
+  }
+
+  @Test
+  public void serviceException() {
+    Throwable expected = new ParameterNotFoundException("not found");
+    when(this.parameterStore.getParametersByPath(any())).thenThrow(expected);
+    ConfigException configException = assertThrows(ConfigException.class, () -> this.provider.get("connectors/foo"));
+    assertEquals(expected, configException.getCause());
+  }
+
+  @Test
+  public void reconfigureReleasesPreviousClient() {
+    this.provider.configure(
+        ImmutableMap.of(ParameterStoreConfigProviderConfig.PREFIX_CONFIG, "production")
+    );
+    verify(this.provider.parameterStoreFactory, times(1)).release(this.parameterStore);
+  }
+
+  @Test
+  public void credentialsMatchSecretsManager() {
+    final String roleArn = "arn:aws:iam::123456789012:role/config-provider";
+    ParameterStoreConfigProviderConfig config = new ParameterStoreConfigProviderConfig(
+        ImmutableMap.of(
+            ParameterStoreConfigProviderConfig.REGION_CONFIG, "us-west-2",
+            ParameterStoreConfigProviderConfig.ENDPOINT_CONFIG, "https://ssm.example.com",
+            ParameterStoreConfigProviderConfig.AWS_ACCESS_KEY_ID_CONFIG, "access",
+            ParameterStoreConfigProviderConfig.AWS_SECRET_KEY_CONFIG, "secret",
+            ParameterStoreConfigProviderConfig.ASSUME_ROLE_ARN_CONFIG, roleArn
+        )
+    );
+    SecretsManagerConfigProviderConfig expected = new SecretsManagerConfigProviderConfig(
+        ImmutableMap.of(
+            SecretsManagerConfigProviderConfig.REGION_CONFIG, "us-west-2",
+            SecretsManagerConfigProviderConfig.ENDPOINT_CONFIG, "https://ssm.example.com",
+            SecretsManagerConfigProviderConfig.AWS_ACCESS_KEY_ID_CONFIG, "access",
+            SecretsManagerConfigProviderConfig.AWS_SECRET_KEY_CONFIG, "secret",
+            SecretsManagerConfigProviderConfig.ASSUME_ROLE_ARN_CONFIG, roleArn
+        )
+    );
+    assertEquals(ClientKey.of(expected), ClientKey.of(config.client));
+    assertEquals(AssumeRoleCredentials.Key.of(expected), AssumeRoleCredentials.Key.of(config.client));
+  }
+}
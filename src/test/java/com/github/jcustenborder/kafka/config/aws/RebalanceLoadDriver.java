@@ -0,0 +1,203 @@
+/**
+ * Copyright © 2021 Jeremy Custenborder (jcustenborder@gmail.com)
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.github.jcustenborder.kafka.config.aws;
+
+import com.google.common.collect.ImmutableSet;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Simulates a Connect cluster rebalance against a {@link SecretsManagerStandIn}. Every worker has its
+ * own provider, client and throttle, as it would in its own JVM. All connectors start at the same time
+ * and resolve their secrets through the provider of the worker they are assigned to. The time from the
+ * start of the rebalance until a connector has resolved all of its secrets is recorded per connector.
+ * <p>
+ * Can be run directly for larger runs, for example
+ * `RebalanceLoadDriver workers=3 connectors=300 secrets=100 secretsPerConnector=5 latencyMs=50 maxRps=50`.
+ */
+class RebalanceLoadDriver {
+  private static final Logger log = LoggerFactory.getLogger(RebalanceLoadDriver.class);
+
+  final SecretsManagerStandIn standIn;
+  int workers = 1;
+  int connectors = 10;
+  int secrets = 10;
+  int secretsPerConnector = 3;
+  long timeoutMs = 60000L;
+  final Map<String, String> settings = new LinkedHashMap<>();
+
+  RebalanceLoadDriver(SecretsManagerStandIn standIn) {
+    this.standIn = standIn;
+  }
+
+  static String path(int secret) {
+    return "connectors/secret-" + secret;
+  }
+
+  Result run() throws Exception {
+    for (int i = 0; i < this.secrets; i++) {
+      this.standIn.put(path(i), "{\"value\": \"" + i + "\"}");
+    }
+    Map<String, Long> before = new LinkedHashMap<>();
+    for (String operation : this.standIn.calls.keySet()) {
+      before.put(operation, this.standIn.calls(operation));
+    }
+
+    List<SecretsManagerConfigProvider> providers = new ArrayList<>();
+    ExecutorService executorService = Executors.newFixedThreadPool(this.connectors);
+    try {
+      for (int worker = 0; worker < this.workers; worker++) {
+        Map<String, String> settings = new LinkedHashMap<>();
+        settings.put(SecretsManagerConfigProviderConfig.ENDPOINT_CONFIG, this.standIn.endpoint());
+        settings.put(SecretsManagerConfigProviderConfig.REGION_CONFIG, "us-east-1");
+        settings.put(SecretsManagerConfigProviderConfig.AWS_ACCESS_KEY_ID_CONFIG, "worker-" + worker);
+        settings.put(SecretsManagerConfigProviderConfig.AWS_SECRET_KEY_CONFIG, "secret");
+        settings.putAll(this.settings);
+        SecretsManagerConfigProvider provider = new SecretsManagerConfigProvider();
+        provider.cache = new SecretCache(SecretCache.DEFAULT_MAXIMUM_BYTES, true);
+        provider.secretsManagerFactory = new SharedSecretsManagerFactory(new SecretsManagerFactoryImpl());
+        provider.configure(settings);
+        providers.add(provider);
+      }
+
+      final CountDownLatch start = new CountDownLatch(1);
+      final AtomicInteger failures = new AtomicInteger();
+      List<Future<Long>> futures = new ArrayList<>(this.connectors);
+      for (int connector = 0; connector < this.connectors; connector++) {
+        final SecretsManagerConfigProvider provider = providers.get(connector % this.workers);
+        final int first = connector;
+        futures.add(executorService.submit(() -> {
+          start.await();
+          long started = System.nanoTime();
+          for (int i = 0; i < this.secretsPerConnector; i++) {
+            try {
+              provider.get(path((first + i) % this.secrets), ImmutableSet.of("value"));
+            } catch (RuntimeException ex) {
+              log.debug("Connector {} could not resolve a secret", first, ex);
+              failures.incrementAndGet();
+            }
+          }
+          return TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - started);
+        }));
+      }
+
+      long started = System.nanoTime();
+      start.countDown();
+      List<Long> latencies = new ArrayList<>(this.connectors);
+      for (Future<Long> future : futures) {
+        latencies.add(future.get(this.timeoutMs, TimeUnit.MILLISECONDS));
+      }
+      long durationMs = TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - started);
+
+      Map<String, Long> calls = new LinkedHashMap<>();
+      for (String operation : this.standIn.calls.keySet()) {
+        calls.put(operation, this.standIn.calls(operation) - before.getOrDefault(operation, 0L));
+      }
+      Result result = new Result(latencies, durationMs, calls, failures.get());
+      log.info("run() - {}", result);
+      return result;
+    } finally {
+      executorService.shutdownNow();
+      for (SecretsManagerConfigProvider provider : providers) {
+        provider.close();
+      }
+    }
+  }
+
+  static class Result {
+    final List<Long> latencies;
+    final long durationMs;
+    final Map<String, Long> calls;
+    final int failures;
+
+    Result(List<Long> latencies, long durationMs, Map<String, Long> calls, int failures) {
+      this.latencies = new ArrayList<>(latencies);
+      Collections.sort(this.latencies);
+      this.durationMs = durationMs;
+      this.calls = calls;
+      this.failures = failures;
+    }
+
+    long percentile(double percentile) {
+      if (this.latencies.isEmpty()) {
+        return 0L;
+      }
+      int index = (int) Math.ceil(percentile / 100D * this.latencies.size()) - 1;
+      return this.latencies.get(Math.max(0, index));
+    }
+
+    long remoteCalls() {
+      long result = 0L;
+      for (Long count : this.calls.values()) {
+        result += count;
+      }
+      return result;
+    }
+
+    @Override
+    public String toString() {
+      return String.format(
+          "connectors=%d duration=%dms p50=%dms p99=%dms max=%dms failures=%d remoteCalls=%d %s",
+          this.latencies.size(),
+          this.durationMs,
+          percentile(50D),
+          percentile(99D),
+          percentile(100D),
+          this.failures,
+          remoteCalls(),
+          this.calls
+      );
+    }
+  }
+
+  public static void main(String... args) throws Exception {
+    Map<String, String> options = new LinkedHashMap<>();
+    for (String arg : args) {
+      int index = arg.indexOf('=');
+      options.put(arg.substring(0, index), arg.substring(index + 1));
+    }
+    try (SecretsManagerStandIn standIn = new SecretsManagerStandIn()) {
+      standIn.latency(Long.parseLong(options.getOrDefault("latencyMs", "20")));
+      standIn.errorRate(Double.parseDouble(options.getOrDefault("errorRate", "0")));
+      if (options.containsKey("maxRps")) {
+        standIn.maxRequestsPerSecond(Double.parseDouble(options.get("maxRps")));
+      }
+      RebalanceLoadDriver driver = new RebalanceLoadDriver(standIn);
+      driver.workers = Integer.parseInt(options.getOrDefault("workers", "3"));
+      driver.connectors = Integer.parseInt(options.getOrDefault("connectors", "100"));
+      driver.secrets = Integer.parseInt(options.getOrDefault("secrets", "50"));
+      driver.secretsPerConnector = Integer.parseInt(options.getOrDefault("secretsPerConnector", "5"));
+      for (Map.Entry<String, String> option : options.entrySet()) {
+        if (option.getKey().contains(".")) {
+          driver.settings.put(option.getKey(), option.getValue());
+        }
+      }
+      System.out.println(driver.run());
+    }
+  }
+}
@@ -0,0 +1,61 @@
+/**
+ * Copyright © 2021 Jeremy Custenborder (jcustenborder@gmail.com)
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.github.jcustenborder.kafka.config.aws;
+
+import com.amazonaws.services.secretsmanager.model.DescribeSecretResult;
+import com.amazonaws.services.secretsmanager.model.RotationRulesType;
+import org.junit.jupiter.api.Test;
+
+import java.util.Date;
+import java.util.concurrent.TimeUnit;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+
+public class RotationScheduleTest {
+  static final long NOW = 1700000000000L;
+
+  @Test
+  public void nextRotationDate() {
+    DescribeSecretResult result = new DescribeSecretResult()
+        .withRotationEnabled(true)
+        .withNextRotationDate(new Date(NOW))
+        .withRotationRules(new RotationRulesType().withDuration("3h"));
+    assertEquals(NOW + TimeUnit.HOURS.toMillis(3), RotationSchedule.nextRotation(result));
+  }
+
+  @Test
+  public void lastRotatedDate() {
+    DescribeSecretResult result = new DescribeSecretResult()
+        .withRotationEnabled(true)
+        .withLastRotatedDate(new Date(NOW))
+        .withRotationRules(new RotationRulesType().withAutomaticallyAfterDays(30L));
+    assertEquals(NOW + TimeUnit.DAYS.toMillis(30), RotationSchedule.nextRotation(result));
+  }
+
+  @Test
+  public void notRotated() {
+    assertEquals(0L, RotationSchedule.nextRotation(new DescribeSecretResult().withNextRotationDate(new Date(NOW))));
+    assertEquals(0L, RotationSchedule.nextRotation(new DescribeSecretResult().withRotationEnabled(true)));
+  }
+
+  @Test
+  public void windowMs() {
+    assertEquals(TimeUnit.HOURS.toMillis(4), RotationSchedule.windowMs("4h"));
+    assertEquals(TimeUnit.DAYS.toMillis(1), RotationSchedule.windowMs("1d"));
+    assertEquals(0L, RotationSchedule.windowMs("soon"));
+    assertEquals(0L, RotationSchedule.windowMs(null));
+  }
+}
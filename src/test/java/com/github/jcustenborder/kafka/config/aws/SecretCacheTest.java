@@ -0,0 +1,208 @@
+/**
+ * Copyright © 2021 Jeremy Custenborder (jcustenborder@gmail.com)
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.github.jcustenborder.kafka.config.aws;
+
+import com.amazonaws.services.secretsmanager.model.AWSSecretsManagerException;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.util.Arrays;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static org.junit.jupiter.api.Assertions.assertArrayEquals;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.junit.jupiter.api.Assertions.assertSame;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+public class SecretCacheTest {
+  static final String SECRET_ID = "foo/bar/baz";
+  static final long TTL = 1000L;
+  ClientKey clientKey;
+  SecretCache cache;
+
+  @BeforeEach
+  public void beforeEach() {
+    this.clientKey = new ClientKey("us-west-2", null, null, null, null, null, null, 0);
+    this.cache = new SecretCache(SecretCache.DEFAULT_MAXIMUM_BYTES, true);
+  }
+
+  CachedSecret secret(String versionId, long age) {
+    return new CachedSecret(
+        SECRET_ID,
+        versionId,
+        "{\"version\": \"" + versionId + "\"}",
+        null,
+        System.currentTimeMillis() - age
+    );
+  }
+
+  @Test
+  public void staleWhileRevalidate() throws Exception {
+    CachedSecret stale = secret("1", TTL + 10L);
+    CachedSecret fresh = secret("2", 0L);
+    this.cache.put(this.clientKey, stale);
+    CountDownLatch loaded = new CountDownLatch(1);
+    CachedSecret actual = this.cache.get(this.clientKey, SECRET_ID, TTL, 60000L, () -> {
+      loaded.countDown();
+      return fresh;
+    });
+    assertSame(stale, actual);
+    assertTrue(loaded.await(10, TimeUnit.SECONDS));
+    for (int i = 0; i < 100 && this.cache.get(this.clientKey, SECRET_ID, TTL, 60000L, () -> fresh) != fresh; i++) {
+      Thread.sleep(10L);
+    }
+    assertSame(fresh, this.cache.get(this.clientKey, SECRET_ID, TTL, 60000L, () -> fresh));
+  }
+
+  @Test
+  public void staleIfError() throws Exception {
+    CachedSecret stale = secret("1", TTL + 10L);
+    this.cache.put(this.clientKey, stale);
+    CountDownLatch attempted = new CountDownLatch(1);
+    CachedSecret actual = this.cache.get(this.clientKey, SECRET_ID, TTL, 60000L, () -> {
+      attempted.countDown();
+      throw new AWSSecretsManagerException("Service unavailable");
+    });
+    assertSame(stale, actual);
+    assertTrue(attempted.await(10, TimeUnit.SECONDS));
+    assertSame(stale, this.cache.get(this.clientKey, SECRET_ID, TTL, 60000L, () -> {
+      throw new AWSSecretsManagerException("Service unavailable");
+    }));
+  }
+
+  @Test
+  public void waitersCountAsMisses() throws Exception {
+    CachedSecret fresh = secret("1", 0L);
+    CountDownLatch loading = new CountDownLatch(1);
+    CountDownLatch release = new CountDownLatch(1);
+    AtomicInteger misses = new AtomicInteger();
+    AtomicInteger loads = new AtomicInteger();
+    ExecutorService executorService = Executors.newSingleThreadExecutor();
+    try {
+      Future<CachedSecret> loader = executorService.submit(() -> this.cache.get(this.clientKey, SECRET_ID, TTL, 0L, misses::incrementAndGet, () -> {
+        loads.incrementAndGet();
+        loading.countDown();
+        release.await(10, TimeUnit.SECONDS);
+        return fresh;
+      }));
+      assertTrue(loading.await(10, TimeUnit.SECONDS));
+      Thread waiter = new Thread(() -> {
+        try {
+          this.cache.get(this.clientKey, SECRET_ID, TTL, 0L, misses::incrementAndGet, () -> fresh);
+        } catch (IOException ex) {
+          throw new IllegalStateException(ex);
+        }
+      });
+      waiter.start();
+      for (int i = 0; i < 100 && misses.get() < 2; i++) {
+        Thread.sleep(10L);
+      }
+      release.countDown();
+      assertSame(fresh, loader.get(10, TimeUnit.SECONDS));
+      waiter.join(10000L);
+    } finally {
+      executorService.shutdownNow();
+    }
+    assertEquals(1, loads.get());
+    assertEquals(2, misses.get(), "a caller waiting on another load should count as a miss");
+    this.cache.get(this.clientKey, SECRET_ID, TTL, 0L, misses::incrementAndGet, () -> fresh);
+    assertEquals(2, misses.get());
+  }
+
+  @Test
+  public void tooStale() throws Exception {
+    CachedSecret stale = secret("1", TTL + 60010L);
+    this.cache.put(this.clientKey, stale);
+    assertThrows(AWSSecretsManagerException.class, () -> this.cache.get(this.clientKey, SECRET_ID, TTL, 60000L, () -> {
+      throw new AWSSecretsManagerException("Service unavailable");
+    }));
+  }
+
+  @Test
+  public void disabled() throws Exception {
+    CachedSecret stale = secret("1", TTL + 10L);
+    CachedSecret fresh = secret("2", 0L);
+    this.cache.put(this.clientKey, stale);
+    assertSame(fresh, this.cache.get(this.clientKey, SECRET_ID, TTL, 0L, () -> fresh));
+    assertEquals(1L, this.cache.size());
+  }
+
+  @Test
+  public void evictsByWeight() {
+    SecretCache cache = new SecretCache(64L * 1024L, false);
+    char[] value = new char[4096];
+    Arrays.fill(value, 'a');
+    for (int i = 0; i < 100; i++) {
+      cache.put(this.clientKey, new CachedSecret("secret" + i, "1", new String(value), null, System.currentTimeMillis()));
+    }
+    assertTrue(cache.size() < 100L, "entries should have been evicted");
+    assertTrue(cache.size() * (2 * value.length) <= 64L * 1024L, "entries should fit within the budget");
+  }
+
+  @Test
+  public void keepsLargeEntryWithinBudget() {
+    SecretCache cache = new SecretCache(64L * 1024L, false);
+    char[] value = new char[24 * 1024];
+    Arrays.fill(value, 'a');
+    cache.put(this.clientKey, new CachedSecret(SECRET_ID, "1", new String(value), null, System.currentTimeMillis()));
+    assertEquals(1L, cache.size(), "an entry within the budget should not be evicted");
+  }
+
+  @Test
+  public void sealed() throws IOException {
+    CachedSecret secret = secret("1", 0L);
+    CachedSecret sealed = this.cache.seal(secret);
+    assertNull(sealed.secretString);
+    assertNull(sealed.secretBinary);
+    assertTrue(((SecretSealer.Sealed) sealed).payload.isDirect());
+    assertEquals(secret.versionId, sealed.versionId);
+    CachedSecret opened = sealed.open();
+    assertNull(opened.secretString, "string secrets should be opened as bytes");
+    assertTrue(opened.isString());
+    assertEquals(secret.secretString, StandardCharsets.UTF_8.decode(opened.secretBinary.duplicate()).toString());
+    SecretSealer.destroy(opened);
+    assertArrayEquals(new byte[opened.secretBinary.array().length], opened.secretBinary.array());
+
+    byte[] binary = {1, 2, 3, 4};
+    CachedSecret sealedBinary = this.cache.seal(new CachedSecret(SECRET_ID, "1", null, ByteBuffer.wrap(binary), 0L));
+    ByteBuffer openedBinary = sealedBinary.open().secretBinary;
+    byte[] actual = new byte[openedBinary.remaining()];
+    openedBinary.get(actual);
+    assertArrayEquals(binary, actual);
+  }
+
+  @Test
+  public void sealedIsBoundToSecretId() {
+    SecretSealer.Sealed sealed = (SecretSealer.Sealed) this.cache.seal(secret("1", 0L));
+    SecretSealer.Sealed moved = new SecretSealer.Sealed(
+        new CachedSecret("other", "1", "", null, 0L),
+        sealed.payload,
+        true,
+        sealed.sealer
+    );
+    assertThrows(IOException.class, moved::open);
+  }
+}
@@ -0,0 +1,225 @@
+/**
+ * Copyright © 2021 Jeremy Custenborder (jcustenborder@gmail.com)
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.github.jcustenborder.kafka.config.aws;
+
+import com.amazonaws.services.kms.AWSKMS;
+import com.amazonaws.services.kms.model.DecryptResult;
+import com.amazonaws.services.kms.model.GenerateDataKeyResult;
+import com.google.common.collect.ImmutableMap;
+import org.apache.kafka.common.config.ConfigException;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import javax.crypto.SecretKey;
+import javax.crypto.spec.SecretKeySpec;
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Path;
+import java.util.Base64;
+import java.util.Comparator;
+import java.util.List;
+import java.util.function.UnaryOperator;
+
+import static org.junit.jupiter.api.Assertions.assertArrayEquals;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertNotSame;
+import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.junit.jupiter.api.Assertions.assertSame;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.times;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.when;
+
+public class SecretSnapshotTest {
+  static final SecretKey KEY = new SecretKeySpec(new byte[32], "AES");
+
+  static final ClientKey CLIENT = new ClientKey("", "", "client", "secret", "", "", "", 0);
+
+  @TempDir
+  Path directory;
+
+  final SecretCache cache = new SecretCache(SecretCache.DEFAULT_MAXIMUM_BYTES, false);
+
+  SecretSnapshot snapshot(SecretSnapshot.KeySource keySource, String associatedData) {
+    return snapshot(this.directory.resolve("secrets.snapshot"), keySource, associatedData, Long.MAX_VALUE);
+  }
+
+  SecretSnapshot snapshot(Path path, SecretSnapshot.KeySource keySource, String associatedData, long ttlMs) {
+    return new SecretSnapshot(path, keySource, associatedData, ttlMs, () -> this.cache.secrets(CLIENT));
+  }
+
+  void record(SecretSnapshot snapshot, CachedSecret secret) {
+    this.cache.put(CLIENT, secret);
+    snapshot.scheduleWrite();
+  }
+
+  SecretsManagerConfigProviderConfig config(String accessKeyId, long ttlMs) {
+    return new SecretsManagerConfigProviderConfig(
+        ImmutableMap.of(
+            SecretsManagerConfigProviderConfig.AWS_ACCESS_KEY_ID_CONFIG, accessKeyId,
+            SecretsManagerConfigProviderConfig.AWS_SECRET_KEY_CONFIG, "secret",
+            SecretsManagerConfigProviderConfig.MIN_TTL_MS_CONFIG, Long.toString(ttlMs),
+            SecretsManagerConfigProviderConfig.SNAPSHOT_PATH_CONFIG, this.directory.resolve("shared.snapshot").toString(),
+            SecretsManagerConfigProviderConfig.SNAPSHOT_KEY_CONFIG, Base64.getEncoder().encodeToString(new byte[32])
+        )
+    );
+  }
+
+  @Test
+  public void sharedBetweenProviders() throws Exception {
+    SecretsManagerConfigProviderConfig first = config("client", 60000L);
+    SecretsManagerConfigProviderConfig second = config("client", 120000L);
+    SecretSnapshot snapshot = SecretSnapshot.of(first, ClientKey.of(first), this.cache);
+    SecretSnapshot other = SecretSnapshot.of(second, ClientKey.of(second), this.cache);
+    assertSame(snapshot, other);
+    assertEquals(120000L, snapshot.ttlMs);
+
+    long now = System.currentTimeMillis();
+    this.cache.put(ClientKey.of(first), new CachedSecret("a", "v1", "{}", null, now));
+    snapshot.scheduleWrite();
+    this.cache.put(ClientKey.of(second), new CachedSecret("b", "v1", "{}", null, now));
+    other.scheduleWrite();
+    snapshot.close();
+    assertTrue(SecretSnapshot.INSTANCES.containsValue(other));
+    other.close();
+    assertTrue(SecretSnapshot.INSTANCES.isEmpty());
+
+    SecretSnapshot restarted = SecretSnapshot.of(first, ClientKey.of(first), this.cache);
+    try {
+      assertNotSame(snapshot, restarted);
+      assertEquals(2, restarted.load(UnaryOperator.identity()).size());
+      SecretsManagerConfigProviderConfig otherClient = config("other", 60000L);
+      assertThrows(ConfigException.class, () -> SecretSnapshot.of(otherClient, ClientKey.of(otherClient), this.cache));
+    } finally {
+      restarted.close();
+    }
+  }
+
+  @Test
+  public void dropsExpiredSecrets() throws Exception {
+    final Path path = this.directory.resolve("secrets.snapshot");
+    SecretSnapshot snapshot = snapshot(path, new SecretSnapshot.StaticKeySource(KEY), "client", 60000L);
+    long now = System.currentTimeMillis();
+    record(snapshot, new CachedSecret("expired", "v1", "{}", null, now - 60000L));
+    record(snapshot, new CachedSecret("current", "v1", "{}", null, now));
+    snapshot.write();
+    snapshot.close();
+
+    List<CachedSecret> secrets = snapshot(new SecretSnapshot.StaticKeySource(KEY), "client").load(UnaryOperator.identity());
+    assertEquals(1, secrets.size());
+    assertEquals("current", secrets.get(0).secretId);
+  }
+
+  @Test
+  public void writesWhatIsCached() throws Exception {
+    SecretSnapshot snapshot = snapshot(new SecretSnapshot.StaticKeySource(KEY), "client");
+    record(snapshot, new CachedSecret("evicted", "v1", "{}", null, System.currentTimeMillis()));
+    record(snapshot, new CachedSecret("cached", "v1", "{}", null, System.currentTimeMillis()));
+    this.cache.put(new ClientKey("", "", "other", "secret", "", "", "", 0), new CachedSecret("other", "v1", "{}", null, System.currentTimeMillis()));
+    this.cache.invalidate(CLIENT, "evicted");
+    snapshot.close();
+
+    SecretSnapshot restarted = snapshot(new SecretSnapshot.StaticKeySource(KEY), "client");
+    List<CachedSecret> secrets = restarted.load(UnaryOperator.identity());
+    assertEquals(1, secrets.size());
+    assertEquals("cached", secrets.get(0).secretId);
+    assertTrue(restarted.load(UnaryOperator.identity()).isEmpty(), "the file should only be read once");
+  }
+
+  @Test
+  public void plaintextOutputZeroesBuffers() {
+    PlaintextOutputStream output = new PlaintextOutputStream(4);
+    byte[] initial = output.buffer().array();
+    output.write(new byte[]{1, 2, 3, 4, 5, 6}, 0, 6);
+    assertArrayEquals(new byte[4], initial, "outgrown buffer should be zeroed");
+    assertEquals(ByteBuffer.wrap(new byte[]{1, 2, 3, 4, 5, 6}), output.buffer());
+    byte[] grown = output.buffer().array();
+    output.destroy();
+    assertArrayEquals(new byte[grown.length], grown);
+    assertEquals(0, output.size());
+  }
+
+  @Test
+  public void roundTrip() throws Exception {
+    SecretSnapshot snapshot = snapshot(new SecretSnapshot.StaticKeySource(KEY), "client");
+    record(snapshot, new CachedSecret("a", "v1", "{\"username\": \"user\"}", null, 1000L));
+    record(snapshot, new CachedSecret("b", null, null, ByteBuffer.wrap("{}".getBytes(StandardCharsets.UTF_8)), 2000L));
+    snapshot.close();
+
+    List<CachedSecret> secrets = snapshot(new SecretSnapshot.StaticKeySource(KEY), "client").load(new SecretSealer()::seal);
+    secrets.sort(Comparator.comparing(s -> s.secretId));
+    assertEquals(2, secrets.size());
+    assertTrue(secrets.get(0) instanceof SecretSealer.Sealed);
+    assertTrue(secrets.get(1) instanceof SecretSealer.Sealed);
+    CachedSecret a = secrets.get(0).open();
+    assertEquals("a", a.secretId);
+    assertEquals("v1", a.versionId);
+    assertTrue(a.isString());
+    assertEquals(ByteBuffer.wrap("{\"username\": \"user\"}".getBytes(StandardCharsets.UTF_8)), a.secretBinary);
+    assertEquals(1000L, a.fetchedAt);
+    CachedSecret b = secrets.get(1).open();
+    assertNull(b.versionId);
+    assertFalse(b.isString());
+    assertEquals(ByteBuffer.wrap("{}".getBytes(StandardCharsets.UTF_8)), b.secretBinary);
+  }
+
+  @Test
+  public void otherClientCannotRead() throws Exception {
+    SecretSnapshot snapshot = snapshot(new SecretSnapshot.StaticKeySource(KEY), "client");
+    record(snapshot, new CachedSecret("a", "v1", "{}", null, 1000L));
+    snapshot.write();
+    snapshot.close();
+
+    assertTrue(snapshot(new SecretSnapshot.StaticKeySource(KEY), "other").load(UnaryOperator.identity()).isEmpty());
+    SecretKey otherKey = new SecretKeySpec(new byte[16], "AES");
+    assertTrue(snapshot(new SecretSnapshot.StaticKeySource(otherKey), "client").load(UnaryOperator.identity()).isEmpty());
+  }
+
+  @Test
+  public void missing() {
+    assertTrue(snapshot(new SecretSnapshot.StaticKeySource(KEY), "client").load(UnaryOperator.identity()).isEmpty());
+  }
+
+  @Test
+  public void kms() throws Exception {
+    AWSKMS kms = mock(AWSKMS.class);
+    when(kms.generateDataKey(any())).thenReturn(
+        new GenerateDataKeyResult()
+            .withPlaintext(ByteBuffer.wrap(new byte[32]))
+            .withCiphertextBlob(ByteBuffer.wrap(new byte[]{1, 2, 3}))
+    );
+    when(kms.decrypt(any())).thenReturn(
+        new DecryptResult()
+            .withPlaintext(ByteBuffer.wrap(new byte[32]))
+    );
+    SecretSnapshot snapshot = snapshot(new SecretSnapshot.KmsKeySource(kms, "alias/snapshot", null), "client");
+    record(snapshot, new CachedSecret("a", "v1", "{}", null, 1000L));
+    snapshot.write();
+    snapshot.write();
+    snapshot.close();
+    verify(kms, times(1)).generateDataKey(any());
+
+    SecretSnapshot.KmsKeySource keySource = new SecretSnapshot.KmsKeySource(kms, "alias/snapshot", null);
+    assertEquals(1, snapshot(keySource, "client").load(UnaryOperator.identity()).size());
+    verify(kms, times(1)).decrypt(any());
+    keySource.writeKey();
+    verify(kms, times(1)).generateDataKey(any());
+  }
+}
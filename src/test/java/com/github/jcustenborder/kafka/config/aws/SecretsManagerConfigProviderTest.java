@@ -15,28 +15,60 @@
  */
 package com.github.jcustenborder.kafka.config.aws;
 
+import com.amazonaws.handlers.AsyncHandler;
 import com.amazonaws.services.secretsmanager.AWSSecretsManager;
+import com.amazonaws.services.secretsmanager.AWSSecretsManagerAsync;
+import com.amazonaws.services.secretsmanager.model.APIErrorType;
+import com.amazonaws.services.secretsmanager.model.BatchGetSecretValueRequest;
+import com.amazonaws.services.secretsmanager.model.BatchGetSecretValueResult;
 import com.amazonaws.services.secretsmanager.model.DecryptionFailureException;
+import com.amazonaws.services.secretsmanager.model.DescribeSecretRequest;
+import com.amazonaws.services.secretsmanager.model.DescribeSecretResult;
 import com.amazonaws.services.secretsmanager.model.GetSecretValueRequest;
 import com.amazonaws.services.secretsmanager.model.GetSecretValueResult;
+import com.amazonaws.services.secretsmanager.model.ListSecretsRequest;
+import com.amazonaws.services.secretsmanager.model.ListSecretsResult;
 import com.amazonaws.services.secretsmanager.model.ResourceNotFoundException;
+import com.amazonaws.services.secretsmanager.model.SecretListEntry;
+import com.amazonaws.services.secretsmanager.model.SecretValueEntry;
+import com.google.common.collect.ImmutableList;
 import com.google.common.collect.ImmutableMap;
 import com.google.common.collect.ImmutableSet;
 import org.apache.kafka.common.config.ConfigData;
 import org.apache.kafka.common.config.ConfigException;
+import org.apache.kafka.common.config.ConfigChangeCallback;
+import org.junit.jupiter.api.AfterEach;
 import org.junit.jupiter.api.BeforeEach;
 import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
 import org.mockito.invocation.InvocationOnMock;
 import org.mockito.stubbing.Answer;
 
 import java.io.IOException;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.Base64;
+import java.util.Collections;
+import java.util.Date;
+import java.util.List;
 import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
 
 import static org.junit.jupiter.api.Assertions.assertEquals;
 import static org.junit.jupiter.api.Assertions.assertNotNull;
 import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
 import static org.mockito.ArgumentMatchers.any;
 import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.never;
+import static org.mockito.Mockito.times;
+import static org.mockito.Mockito.verify;
 import static org.mockito.Mockito.when;
 
 public class SecretsManagerConfigProviderTest {
@@ -47,6 +79,7 @@ public class SecretsManagerConfigProviderTest {
   public void beforeEach() {
     this.secretsManager = mock(AWSSecretsManager.class);
     this.provider = new SecretsManagerConfigProvider();
+    this.provider.cache = new SecretCache(SecretCache.DEFAULT_MAXIMUM_BYTES, true);
     this.provider.secretsManagerFactory = mock(SecretsManagerFactory.class);
     when(this.provider.secretsManagerFactory.create(any())).thenReturn(this.secretsManager);
     this.provider.configure(
@@ -54,7 +87,7 @@ public class SecretsManagerConfigProviderTest {
     );
   }
 
-  @Test
+  @AfterEach
   public void afterEach() throws IOException {
     this.provider.close();
   }
@@ -103,6 +136,81 @@ public class SecretsManagerConfigProviderTest {
 
   }
 
+  @Test
+  public void codecOverrides() {
+    this.provider.configure(
+        ImmutableMap.of(
+            SecretsManagerConfigProviderConfig.CODEC_OVERRIDES_CONFIG, "tenants/=properties,tenants/raw/=raw"
+        )
+    );
+    when(secretsManager.getSecretValue(any())).thenAnswer(invocationOnMock -> {
+      GetSecretValueRequest request = invocationOnMock.getArgument(0);
+      return new GetSecretValueResult()
+          .withName(request.getSecretId())
+          .withSecretString("username=asdf");
+    });
+    assertEquals(ImmutableMap.of("username", "asdf"), this.provider.get("tenants/a").data());
+    assertEquals(ImmutableMap.of(RawSecretCodec.KEY, "username=asdf"), this.provider.get("tenants/raw/a").data());
+    assertThrows(ConfigException.class, () -> this.provider.get("other/a"));
+  }
+
+  @Test
+  public void emptyValue() {
+    when(secretsManager.getSecretValue(any())).thenReturn(new GetSecretValueResult().withName("empty").withVersionId("1"));
+    ConfigException configException = assertThrows(ConfigException.class, () -> this.provider.get("empty"));
+    assertTrue(configException.getMessage().contains("'empty'"), configException.getMessage());
+  }
+
+  @Test
+  public void asyncEngine() {
+    AWSSecretsManagerAsync secretsManagerAsync = mock(AWSSecretsManagerAsync.class);
+    when(this.provider.secretsManagerFactory.createAsync(any())).thenReturn(secretsManagerAsync);
+    when(secretsManagerAsync.getSecretValueAsync(any(), any())).thenAnswer(invocationOnMock -> {
+      GetSecretValueRequest request = invocationOnMock.getArgument(0);
+      AsyncHandler<GetSecretValueRequest, GetSecretValueResult> handler = invocationOnMock.getArgument(1);
+      return CompletableFuture.runAsync(() -> {
+        if (request.getSecretId().startsWith("missing")) {
+          handler.onError(new ResourceNotFoundException("Resource was not found."));
+        } else {
+          handler.onSuccess(
+              request,
+              new GetSecretValueResult()
+                  .withName(request.getSecretId())
+                  .withSecretString("{\"name\": \"" + request.getSecretId() + "\"}")
+          );
+        }
+      });
+    });
+    List<String> paths = new ArrayList<>();
+    for (int i = 0; i < 50; i++) {
+      paths.add("secret" + i);
+    }
+    this.provider.configure(
+        ImmutableMap.of(
+            SecretsManagerConfigProviderConfig.ASYNC_ENABLED_CONFIG, "true",
+            SecretsManagerConfigProviderConfig.PREFETCH_PATHS_CONFIG, String.join(",", paths)
+        )
+    );
+    this.provider.prefetching.join();
+    verify(secretsManagerAsync, times(50)).getSecretValueAsync(any(), any());
+    assertEquals(ImmutableMap.of("name", "secret7"), this.provider.get("secret7").data());
+    verify(secretsManagerAsync, times(50)).getSecretValueAsync(any(), any());
+    verify(secretsManagerAsync, never()).getSecretValue(any());
+
+    ConfigException configException = assertThrows(ConfigException.class, () -> this.provider.get("missing"));
+    assertTrue(configException.getCause() instanceof ResourceNotFoundException);
+  }
+
+  @Test
+  public void asyncEngineCannotBeBatched() {
+    assertThrows(ConfigException.class, () -> this.provider.configure(
+        ImmutableMap.of(
+            SecretsManagerConfigProviderConfig.ASYNC_ENABLED_CONFIG, "true",
+            SecretsManagerConfigProviderConfig.BATCH_WINDOW_MS_CONFIG, "10"
+        )
+    ));
+  }
+
   @Test
   public void getPrefixed() {
     this.provider.configure(
@@ -131,6 +239,343 @@ public class SecretsManagerConfigProviderTest {
 
   }
 
+  @Test
+  public void getCached() {
+    final String secretName = "foo/bar/baz";
+    GetSecretValueResult result = new GetSecretValueResult()
+        .withName(secretName)
+        .withSecretString("{\n" +
+            "  \"username\": \"asdf\",\n" +
+            "  \"password\": \"asdf\"\n" +
+            "}");
+    when(secretsManager.getSecretValue(any())).thenReturn(result);
+    ConfigData all = this.provider.get(secretName, ImmutableSet.of());
+    ConfigData username = this.provider.get(secretName, ImmutableSet.of("username"));
+    assertEquals(ImmutableMap.of("username", "asdf", "password", "asdf"), all.data());
+    assertEquals(ImmutableMap.of("username", "asdf"), username.data());
+    verify(secretsManager, times(1)).getSecretValue(any());
+  }
+
+  @Test
+  public void ttlRotationAwareWithJitter() {
+    final long nextRotation = System.currentTimeMillis() + TimeUnit.DAYS.toMillis(7);
+    this.provider.configure(
+        ImmutableMap.of(
+            SecretsManagerConfigProviderConfig.TTL_ROTATION_AWARE_CONFIG, "true",
+            SecretsManagerConfigProviderConfig.TTL_JITTER_MS_CONFIG, "60000"
+        )
+    );
+    when(secretsManager.getSecretValue(any())).thenAnswer(invocationOnMock -> {
+      GetSecretValueRequest request = invocationOnMock.getArgument(0);
+      return new GetSecretValueResult()
+          .withName(request.getSecretId())
+          .withSecretString("{\"username\": \"asdf\"}");
+    });
+    when(secretsManager.describeSecret(any())).thenAnswer(invocationOnMock -> {
+      DescribeSecretRequest request = invocationOnMock.getArgument(0);
+      DescribeSecretResult result = new DescribeSecretResult().withName(request.getSecretId());
+      return "rotated".equals(request.getSecretId()) ?
+          result.withRotationEnabled(true).withNextRotationDate(new Date(nextRotation)) :
+          result.withRotationEnabled(false);
+    });
 
+    long rotated = this.provider.get("rotated").ttl();
+    assertTrue(rotated >= nextRotation - System.currentTimeMillis(), Long.toString(rotated));
+    assertTrue(rotated <= TimeUnit.DAYS.toMillis(7) + 60000L, Long.toString(rotated));
+
+    long minimum = this.provider.config.minimumSecretTTL;
+    for (int i = 0; i < 10; i++) {
+      long ttl = this.provider.get("static").ttl();
+      assertTrue(ttl >= minimum && ttl <= minimum + 60000L, Long.toString(ttl));
+    }
+  }
+
+  @Test
+  public void metrics() {
+    final String secretName = "foo/bar/baz";
+    when(secretsManager.getSecretValue(any())).thenAnswer(invocationOnMock -> {
+      GetSecretValueRequest request = invocationOnMock.getArgument(0);
+      if (!secretName.equals(request.getSecretId())) {
+        throw new ResourceNotFoundException("Secret was not found.");
+      }
+      return new GetSecretValueResult()
+          .withName(secretName)
+          .withSecretString("{\"username\": \"asdf\"}");
+    });
+    this.provider.get(secretName);
+    this.provider.get(secretName);
+    assertThrows(ConfigException.class, () -> this.provider.get("missing"));
+
+    SecretsManagerMetrics metrics = this.provider.metrics;
+    assertEquals(1D, metric(metrics, "cache-hit-total"));
+    assertEquals(2D, metric(metrics, "cache-miss-total"));
+    assertEquals(1D / 3D, metric(metrics, "cache-hit-ratio"));
+    assertEquals(1D, metric(metrics, "fetch-total"));
+    assertEquals(1D, metric(metrics, "fetch-error-total"));
+    assertEquals(20D, metric(metrics, "payload-bytes-total"));
+    assertEquals(0D, metric(metrics, "fetch-in-flight"));
+    assertTrue(
+        metrics.metrics.metrics().keySet().stream().anyMatch(name ->
+            "fetch-latency-p99".equals(name.name()) && secretName.equals(name.tags().get(SecretsManagerMetrics.SECRET_TAG))
+        )
+    );
+  }
+
+  static double metric(SecretsManagerMetrics metrics, String name) {
+    return ((Number) metrics.metrics.metric(metrics.name(name, "")).metricValue()).doubleValue();
+  }
 
+  @Test
+  public void getConcurrentMissesShareRequest() throws Exception {
+    final String secretName = "foo/bar/baz";
+    final CountDownLatch requested = new CountDownLatch(1);
+    final CountDownLatch release = new CountDownLatch(1);
+    when(secretsManager.getSecretValue(any())).thenAnswer(invocationOnMock -> {
+      requested.countDown();
+      release.await(10, TimeUnit.SECONDS);
+      return new GetSecretValueResult()
+          .withName(secretName)
+          .withSecretString("{\"username\": \"asdf\"}");
+    });
+    ExecutorService executorService = Executors.newFixedThreadPool(4);
+    try {
+      List<Future<ConfigData>> futures = new ArrayList<>();
+      for (int i = 0; i < 4; i++) {
+        futures.add(executorService.submit(() -> this.provider.get(secretName, ImmutableSet.of("username"))));
+      }
+      assertTrue(requested.await(10, TimeUnit.SECONDS));
+      release.countDown();
+      for (Future<ConfigData> future : futures) {
+        assertEquals(ImmutableMap.of("username", "asdf"), future.get(10, TimeUnit.SECONDS).data());
+      }
+    } finally {
+      executorService.shutdownNow();
+    }
+    verify(secretsManager, times(1)).getSecretValue(any());
+  }
+
+  @Test
+  public void subscribeNotifiesChangedKeys() {
+    final String secretName = "foo/bar/baz";
+    when(secretsManager.getSecretValue(any())).thenReturn(
+        new GetSecretValueResult()
+            .withName(secretName)
+            .withVersionId("1")
+            .withSecretString("{\"username\": \"asdf\", \"password\": \"asdf\"}"),
+        new GetSecretValueResult()
+            .withName(secretName)
+            .withVersionId("2")
+            .withSecretString("{\"username\": \"asdf\", \"password\": \"changed\"}")
+    );
+    when(secretsManager.listSecrets(any())).thenReturn(
+        new ListSecretsResult().withSecretList(
+            new SecretListEntry()
+                .withName(secretName)
+                .withSecretVersionsToStages(ImmutableMap.of("1", ImmutableList.of("AWSCURRENT"))),
+            new SecretListEntry()
+                .withName(secretName + "/other")
+                .withSecretVersionsToStages(ImmutableMap.of("9", ImmutableList.of("AWSCURRENT")))
+        ),
+        new ListSecretsResult().withSecretList(
+            new SecretListEntry()
+                .withName(secretName)
+                .withSecretVersionsToStages(ImmutableMap.of(
+                    "1", ImmutableList.of("AWSPREVIOUS"),
+                    "2", ImmutableList.of("AWSCURRENT")
+                ))
+        )
+    );
+    List<ConfigData> changes = new ArrayList<>();
+    ConfigChangeCallback callback = (path, data) -> {
+      assertEquals(secretName, path);
+      changes.add(data);
+    };
+    this.provider.subscribe(secretName, ImmutableSet.of("username", "password"), callback);
+
+    this.provider.refresher.poll();
+    assertTrue(changes.isEmpty());
+    verify(secretsManager, times(1)).getSecretValue(any());
+
+    this.provider.refresher.poll();
+    assertEquals(1, changes.size());
+    assertEquals(ImmutableMap.of("password", "changed"), changes.get(0).data());
+    assertEquals(ImmutableMap.of("username", "asdf", "password", "changed"), this.provider.get(secretName).data());
+    verify(secretsManager, times(2)).getSecretValue(any());
+
+    this.provider.unsubscribe(secretName, ImmutableSet.of("username", "password"), callback);
+    assertTrue(this.provider.refresher.subscriptions.isEmpty());
+  }
+
+  @Test
+  public void subscribeNotifiesRemovedKeys() {
+    final String secretName = "foo/bar/baz";
+    when(secretsManager.getSecretValue(any())).thenReturn(
+        new GetSecretValueResult()
+            .withName(secretName)
+            .withVersionId("1")
+            .withSecretString("{\"username\": \"asdf\", \"password\": \"asdf\"}"),
+        new GetSecretValueResult()
+            .withName(secretName)
+            .withVersionId("2")
+            .withSecretString("{\"username\": \"asdf\"}")
+    );
+    when(secretsManager.listSecrets(any())).thenReturn(
+        new ListSecretsResult().withSecretList(
+            new SecretListEntry()
+                .withName(secretName)
+                .withSecretVersionsToStages(ImmutableMap.of("2", ImmutableList.of("AWSCURRENT")))
+        )
+    );
+    List<ConfigData> changes = new ArrayList<>();
+    ConfigChangeCallback callback = (path, data) -> changes.add(data);
+    this.provider.subscribe(secretName, ImmutableSet.of(), callback);
+
+    this.provider.refresher.poll();
+    assertEquals(1, changes.size());
+    assertEquals(Collections.singletonMap("password", null), changes.get(0).data());
+
+    this.provider.unsubscribe(secretName, ImmutableSet.of("password"), callback);
+    assertEquals(1, this.provider.refresher.subscriptions.size());
+    this.provider.unsubscribe(secretName, ImmutableSet.of(), callback);
+    assertTrue(this.provider.refresher.subscriptions.isEmpty());
+  }
+
+  @Test
+  public void subscribeAfterClose() throws IOException {
+    ConfigChangeCallback callback = (path, data) -> { };
+    this.provider.close();
+    assertThrows(IllegalStateException.class, () -> this.provider.subscribe("foo", ImmutableSet.of(), callback));
+    this.provider.unsubscribe("foo", ImmutableSet.of(), callback);
+    this.provider.unsubscribeAll();
+  }
+
+  @Test
+  public void prefetch() throws IOException {
+    when(secretsManager.listSecrets(any())).thenAnswer(invocationOnMock -> {
+      ListSecretsRequest request = invocationOnMock.getArgument(0);
+      if (null == request.getNextToken()) {
+        return new ListSecretsResult()
+            .withSecretList(
+                new SecretListEntry().withName("prefixed/one"),
+                new SecretListEntry().withName("prefixed-other/two")
+            ).withNextToken("page2");
+      } else {
+        return new ListSecretsResult()
+            .withSecretList(new SecretListEntry().withName("prefixed/three"));
+      }
+    });
+    when(secretsManager.getSecretValue(any())).thenAnswer(invocationOnMock -> {
+      GetSecretValueRequest request = invocationOnMock.getArgument(0);
+      return new GetSecretValueResult()
+          .withName(request.getSecretId())
+          .withSecretString("{\"name\": \"" + request.getSecretId() + "\"}");
+    });
+    this.provider.configure(
+        ImmutableMap.of(
+            SecretsManagerConfigProviderConfig.PREFIX_CONFIG, "prefixed",
+            SecretsManagerConfigProviderConfig.PREFETCH_PATHS_CONFIG, "four",
+            SecretsManagerConfigProviderConfig.PREFETCH_PREFIX_ENABLED_CONFIG, "true"
+        )
+    );
+    this.provider.prefetching.join();
+    verify(secretsManager, times(3)).getSecretValue(any());
+    assertEquals(ImmutableMap.of("name", "prefixed/one"), this.provider.get("one").data());
+    assertEquals(ImmutableMap.of("name", "prefixed/three"), this.provider.get("three").data());
+    assertEquals(ImmutableMap.of("name", "prefixed/four"), this.provider.get("four").data());
+    verify(secretsManager, times(3)).getSecretValue(any());
+
+    SecretsManagerConfigProvider other = new SecretsManagerConfigProvider();
+    other.cache = this.provider.cache;
+    other.secretsManagerFactory = this.provider.secretsManagerFactory;
+    try {
+      other.configure(
+          ImmutableMap.of(
+              SecretsManagerConfigProviderConfig.PREFIX_CONFIG, "prefixed",
+              SecretsManagerConfigProviderConfig.PREFETCH_PATHS_CONFIG, "four",
+              SecretsManagerConfigProviderConfig.PREFETCH_PREFIX_ENABLED_CONFIG, "true"
+          )
+      );
+      other.prefetching.join();
+      verify(secretsManager, times(2)).listSecrets(any());
+      verify(secretsManager, times(3)).getSecretValue(any());
+    } finally {
+      other.close();
+    }
+  }
+
+  @Test
+  public void batched() throws Exception {
+    this.provider.configure(
+        ImmutableMap.of(SecretsManagerConfigProviderConfig.BATCH_WINDOW_MS_CONFIG, "100")
+    );
+    when(secretsManager.batchGetSecretValue(any())).thenAnswer(invocationOnMock -> {
+      BatchGetSecretValueRequest request = invocationOnMock.getArgument(0);
+      List<SecretValueEntry> values = new ArrayList<>();
+      List<APIErrorType> errors = new ArrayList<>();
+      for (String secretId : request.getSecretIdList()) {
+        if (secretId.startsWith("missing")) {
+          errors.add(
+              new APIErrorType()
+                  .withSecretId(secretId)
+                  .withErrorCode("ResourceNotFoundException")
+                  .withMessage("Secret was not found.")
+          );
+        } else {
+          values.add(
+              new SecretValueEntry()
+                  .withName(secretId)
+                  .withSecretString("{\"name\": \"" + secretId + "\"}")
+          );
+        }
+      }
+      return new BatchGetSecretValueResult()
+          .withSecretValues(values)
+          .withErrors(errors);
+    });
+    ExecutorService executorService = Executors.newFixedThreadPool(3);
+    try {
+      Future<ConfigData> one = executorService.submit(() -> this.provider.get("one"));
+      Future<ConfigData> two = executorService.submit(() -> this.provider.get("two"));
+      Future<ConfigData> missing = executorService.submit(() -> this.provider.get("missing"));
+      assertEquals(ImmutableMap.of("name", "one"), one.get(10, TimeUnit.SECONDS).data());
+      assertEquals(ImmutableMap.of("name", "two"), two.get(10, TimeUnit.SECONDS).data());
+      ExecutionException exception = assertThrows(ExecutionException.class, () -> missing.get(10, TimeUnit.SECONDS));
+      assertTrue(exception.getCause() instanceof ConfigException);
+      assertTrue(exception.getCause().getCause() instanceof ResourceNotFoundException);
+    } finally {
+      executorService.shutdownNow();
+    }
+    verify(secretsManager, times(1)).batchGetSecretValue(any());
+    verify(secretsManager, never()).getSecretValue(any());
+  }
+
+  @Test
+  public void warmStartFromSnapshot(@TempDir Path directory) throws IOException {
+    Map<String, String> settings = ImmutableMap.of(
+        SecretsManagerConfigProviderConfig.SNAPSHOT_PATH_CONFIG, directory.resolve("secrets.snapshot").toString(),
+        SecretsManagerConfigProviderConfig.SNAPSHOT_KEY_CONFIG, Base64.getEncoder().encodeToString(new byte[32])
+    );
+    when(secretsManager.getSecretValue(any())).thenReturn(
+        new GetSecretValueResult()
+            .withName("foo")
+            .withVersionId("v1")
+            .withSecretString("{\"username\": \"user\"}")
+    );
+    this.provider.configure(settings);
+    this.provider.get("foo");
+    this.provider.close();
+
+    AWSSecretsManager restarted = mock(AWSSecretsManager.class);
+    when(restarted.getSecretValue(any())).thenThrow(new ResourceNotFoundException("Secrets Manager is unavailable."));
+    SecretsManagerConfigProvider provider = new SecretsManagerConfigProvider();
+    provider.cache = new SecretCache(SecretCache.DEFAULT_MAXIMUM_BYTES, true);
+    provider.secretsManagerFactory = mock(SecretsManagerFactory.class);
+    when(provider.secretsManagerFactory.create(any())).thenReturn(restarted);
+    provider.configure(settings);
+    try {
+      assertEquals(ImmutableMap.of("username", "user"), provider.get("foo").data());
+    } finally {
+      provider.close();
+    }
+  }
 }
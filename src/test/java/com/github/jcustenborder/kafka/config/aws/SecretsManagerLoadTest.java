@@ -0,0 +1,129 @@
+/**
+ * Copyright © 2021 Jeremy Custenborder (jcustenborder@gmail.com)
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.github.jcustenborder.kafka.config.aws;
+
+import com.google.common.collect.ImmutableMap;
+import com.google.common.collect.ImmutableSet;
+import org.apache.kafka.common.config.ConfigData;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+
+import java.io.IOException;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+public class SecretsManagerLoadTest {
+  SecretsManagerStandIn standIn;
+  RebalanceLoadDriver driver;
+
+  @BeforeEach
+  public void beforeEach() throws IOException {
+    this.standIn = new SecretsManagerStandIn();
+    this.driver = new RebalanceLoadDriver(this.standIn);
+  }
+
+  @AfterEach
+  public void afterEach() {
+    this.standIn.close();
+  }
+
+  @Test
+  public void rebalance() throws Exception {
+    this.standIn.latency(20L);
+    this.driver.workers = 3;
+    this.driver.connectors = 30;
+    this.driver.secrets = 20;
+    this.driver.secretsPerConnector = 5;
+    RebalanceLoadDriver.Result result = this.driver.run();
+    assertEquals(0, result.failures);
+    assertEquals(30, result.latencies.size());
+    // Concurrent lookups of the same secret on a worker share a single request.
+    assertTrue(result.calls.get("GetSecretValue") <= 3 * 20, result.toString());
+  }
+
+  @Test
+  public void rebalanceBatched() throws Exception {
+    this.standIn.latency(20L);
+    this.driver.workers = 2;
+    this.driver.connectors = 20;
+    this.driver.secrets = 40;
+    this.driver.secretsPerConnector = 4;
+    this.driver.settings.put(SecretsManagerConfigProviderConfig.BATCH_WINDOW_MS_CONFIG, "20");
+    RebalanceLoadDriver.Result result = this.driver.run();
+    assertEquals(0, result.failures);
+    assertEquals(0L, result.calls.getOrDefault("GetSecretValue", 0L));
+    assertTrue(result.calls.get("BatchGetSecretValue") < 2 * 40, result.toString());
+  }
+
+  @Test
+  public void rebalanceThrottled() throws Exception {
+    this.standIn.maxRequestsPerSecond(20D);
+    this.driver.workers = 2;
+    this.driver.connectors = 20;
+    this.driver.secrets = 20;
+    this.driver.secretsPerConnector = 2;
+    RebalanceLoadDriver.Result result = this.driver.run();
+    assertEquals(0, result.failures, result.toString());
+  }
+
+  @Test
+  public void rebalanceWithServerErrors() throws Exception {
+    this.standIn.errorRate(0.1D);
+    this.driver.workers = 2;
+    this.driver.connectors = 20;
+    this.driver.secrets = 20;
+    this.driver.secretsPerConnector = 2;
+    RebalanceLoadDriver.Result result = this.driver.run();
+    assertEquals(0, result.failures, result.toString());
+  }
+
+  @Test
+  public void prefetchPaginates() throws Exception {
+    this.standIn.pageSize(7);
+    for (int i = 0; i < 50; i++) {
+      this.standIn.put("staging/connectors/secret-" + i, "{\"value\": \"" + i + "\"}");
+    }
+    this.standIn.put("production/connectors/secret-0", "{\"value\": \"production\"}");
+
+    SecretsManagerConfigProvider provider = new SecretsManagerConfigProvider();
+    provider.cache = new SecretCache(SecretCache.DEFAULT_MAXIMUM_BYTES, true);
+    provider.secretsManagerFactory = new SharedSecretsManagerFactory(new SecretsManagerFactoryImpl());
+    try {
+      provider.configure(
+          ImmutableMap.<String, String>builder()
+              .put(SecretsManagerConfigProviderConfig.ENDPOINT_CONFIG, this.standIn.endpoint())
+              .put(SecretsManagerConfigProviderConfig.AWS_ACCESS_KEY_ID_CONFIG, "prefetch")
+              .put(SecretsManagerConfigProviderConfig.AWS_SECRET_KEY_CONFIG, "secret")
+              .put(SecretsManagerConfigProviderConfig.PREFIX_CONFIG, "staging")
+              .put(SecretsManagerConfigProviderConfig.PREFETCH_PREFIX_ENABLED_CONFIG, "true")
+              .put(SecretsManagerConfigProviderConfig.BATCH_WINDOW_MS_CONFIG, "10")
+              .build()
+      );
+      provider.prefetching.join();
+      assertEquals(8L, this.standIn.calls("ListSecrets"));
+      long calls = this.standIn.totalCalls();
+      for (int i = 0; i < 50; i++) {
+        ConfigData data = provider.get("connectors/secret-" + i, ImmutableSet.of("value"));
+        assertEquals(ImmutableMap.of("value", Integer.toString(i)), data.data());
+      }
+      assertEquals(calls, this.standIn.totalCalls());
+    } finally {
+      provider.close();
+    }
+  }
+}
@@ -0,0 +1,299 @@
+/**
+ * Copyright © 2021 Jeremy Custenborder (jcustenborder@gmail.com)
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.github.jcustenborder.kafka.config.aws;
+
+import com.fasterxml.jackson.databind.JsonNode;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.fasterxml.jackson.databind.node.ArrayNode;
+import com.fasterxml.jackson.databind.node.ObjectNode;
+import com.google.common.util.concurrent.RateLimiter;
+import com.sun.net.httpserver.HttpExchange;
+import com.sun.net.httpserver.HttpServer;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.net.InetAddress;
+import java.net.InetSocketAddress;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.UUID;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentSkipListMap;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * In-process HTTP server speaking the subset of the Secrets Manager JSON protocol the provider uses:
+ * GetSecretValue, BatchGetSecretValue, DescribeSecret and ListSecrets. Latency, server errors and
+ * throttling can be injected, and every call is counted by operation. Point the provider at it with
+ * `secrets.manager.endpoint`.
+ */
+class SecretsManagerStandIn implements Closeable {
+  static final String ARN_PREFIX = "arn:aws:secretsmanager:us-east-1:123456789012:secret:";
+
+  final ObjectMapper mapper = new ObjectMapper();
+  final Map<String, Secret> secrets = new ConcurrentSkipListMap<>();
+  final Map<String, AtomicLong> calls = new ConcurrentHashMap<>();
+  final AtomicLong throttled = new AtomicLong();
+  final HttpServer server;
+  final ExecutorService executorService;
+
+  volatile long latencyMs;
+  volatile double errorRate;
+  volatile RateLimiter rateLimiter;
+  volatile int pageSize = 100;
+
+  SecretsManagerStandIn() throws IOException {
+    this.server = HttpServer.create(new InetSocketAddress(InetAddress.getLoopbackAddress(), 0), 0);
+    this.executorService = Executors.newCachedThreadPool();
+    this.server.setExecutor(this.executorService);
+    this.server.createContext("/", this::handle);
+    this.server.start();
+  }
+
+  String endpoint() {
+    return "http://" + this.server.getAddress().getHostString() + ":" + this.server.getAddress().getPort();
+  }
+
+  SecretsManagerStandIn latency(long latencyMs) {
+    this.latencyMs = latencyMs;
+    return this;
+  }
+
+  /**
+   * Fraction of requests, between 0 and 1, that fail with an internal service error.
+   */
+  SecretsManagerStandIn errorRate(double errorRate) {
+    this.errorRate = errorRate;
+    return this;
+  }
+
+  /**
+   * Requests above this rate are rejected with a ThrottlingException.
+   */
+  SecretsManagerStandIn maxRequestsPerSecond(double maxRequestsPerSecond) {
+    this.rateLimiter = RateLimiter.create(maxRequestsPerSecond);
+    return this;
+  }
+
+  SecretsManagerStandIn pageSize(int pageSize) {
+    this.pageSize = pageSize;
+    return this;
+  }
+
+  void put(String name, String secretString) {
+    this.secrets.put(name, new Secret(name, UUID.randomUUID().toString(), secretString));
+  }
+
+  long calls(String operation) {
+    AtomicLong count = this.calls.get(operation);
+    return null == count ? 0L : count.get();
+  }
+
+  long totalCalls() {
+    long result = 0L;
+    for (AtomicLong count : this.calls.values()) {
+      result += count.get();
+    }
+    return result;
+  }
+
+  Secret lookup(String secretId) {
+    return this.secrets.get(secretId.startsWith(ARN_PREFIX) ? secretId.substring(ARN_PREFIX.length()) : secretId);
+  }
+
+  void handle(HttpExchange exchange) throws IOException {
+    try {
+      String target = exchange.getRequestHeaders().getFirst("X-Amz-Target");
+      String operation = null == target ? "" : target.substring(target.indexOf('.') + 1);
+      JsonNode request = this.mapper.readTree(exchange.getRequestBody());
+      this.calls.computeIfAbsent(operation, k -> new AtomicLong()).incrementAndGet();
+
+      if (this.latencyMs > 0) {
+        Thread.sleep(this.latencyMs);
+      }
+      RateLimiter rateLimiter = this.rateLimiter;
+      if (null != rateLimiter && !rateLimiter.tryAcquire()) {
+        this.throttled.incrementAndGet();
+        error(exchange, 400, "ThrottlingException", "Rate exceeded");
+        return;
+      }
+      if (this.errorRate > 0 && ThreadLocalRandom.current().nextDouble() < this.errorRate) {
+        error(exchange, 500, "InternalServiceError", "Injected failure");
+        return;
+      }
+
+      switch (operation) {
+        case "GetSecretValue":
+          getSecretValue(exchange, request);
+          break;
+        case "BatchGetSecretValue":
+          batchGetSecretValue(exchange, request);
+          break;
+        case "DescribeSecret":
+          describeSecret(exchange, request);
+          break;
+        case "ListSecrets":
+          listSecrets(exchange, request);
+          break;
+        default:
+          error(exchange, 400, "InvalidRequestException", "Unsupported operation " + operation);
+      }
+    } catch (InterruptedException ex) {
+      Thread.currentThread().interrupt();
+      error(exchange, 500, "InternalServiceError", ex.getMessage());
+    } finally {
+      exchange.close();
+    }
+  }
+
+  void getSecretValue(HttpExchange exchange, JsonNode request) throws IOException {
+    Secret secret = lookup(request.path("SecretId").asText());
+    if (null == secret) {
+      error(exchange, 400, "ResourceNotFoundException", "Secrets Manager can't find the specified secret.");
+      return;
+    }
+    respond(exchange, secret.value(this.mapper));
+  }
+
+  void batchGetSecretValue(HttpExchange exchange, JsonNode request) throws IOException {
+    List<String> secretIds = new ArrayList<>();
+    for (JsonNode secretId : request.path("SecretIdList")) {
+      secretIds.add(secretId.asText());
+    }
+    int start = request.path("NextToken").asInt(0);
+    int end = Math.min(secretIds.size(), start + this.pageSize);
+
+    ObjectNode response = this.mapper.createObjectNode();
+    ArrayNode values = response.putArray("SecretValues");
+    ArrayNode errors = response.putArray("Errors");
+    for (String secretId : secretIds.subList(start, end)) {
+      Secret secret = lookup(secretId);
+      if (null == secret) {
+        errors.addObject()
+            .put("SecretId", secretId)
+            .put("ErrorCode", "ResourceNotFoundException")
+            .put("Message", "Secrets Manager can't find the specified secret.");
+      } else {
+        values.add(secret.value(this.mapper));
+      }
+    }
+    if (end < secretIds.size()) {
+      response.put("NextToken", Integer.toString(end));
+    }
+    respond(exchange, response);
+  }
+
+  void describeSecret(HttpExchange exchange, JsonNode request) throws IOException {
+    Secret secret = lookup(request.path("SecretId").asText());
+    if (null == secret) {
+      error(exchange, 400, "ResourceNotFoundException", "Secrets Manager can't find the specified secret.");
+      return;
+    }
+    ObjectNode response = this.mapper.createObjectNode()
+        .put("ARN", ARN_PREFIX + secret.name)
+        .put("Name", secret.name);
+    response.putObject("VersionIdsToStages")
+        .putArray(secret.versionId)
+        .add(SecretsManagerConfigProvider.CURRENT_STAGE);
+    respond(exchange, response);
+  }
+
+  void listSecrets(HttpExchange exchange, JsonNode request) throws IOException {
+    List<String> prefixes = new ArrayList<>();
+    for (JsonNode filter : request.path("Filters")) {
+      if ("name".equals(filter.path("Key").asText())) {
+        for (JsonNode value : filter.path("Values")) {
+          prefixes.add(value.asText());
+        }
+      }
+    }
+    List<Secret> matches = new ArrayList<>();
+    for (Secret secret : this.secrets.values()) {
+      if (prefixes.isEmpty() || prefixes.stream().anyMatch(secret.name::startsWith)) {
+        matches.add(secret);
+      }
+    }
+    int start = request.path("NextToken").asInt(0);
+    int end = Math.min(matches.size(), start + Math.min(this.pageSize, request.path("MaxResults").asInt(100)));
+
+    ObjectNode response = this.mapper.createObjectNode();
+    ArrayNode secretList = response.putArray("SecretList");
+    for (Secret secret : matches.subList(start, end)) {
+      secretList.addObject()
+          .put("ARN", ARN_PREFIX + secret.name)
+          .put("Name", secret.name);
+    }
+    if (end < matches.size()) {
+      response.put("NextToken", Integer.toString(end));
+    }
+    respond(exchange, response);
+  }
+
+  void respond(HttpExchange exchange, JsonNode response) throws IOException {
+    write(exchange, 200, this.mapper.writeValueAsBytes(response));
+  }
+
+  void error(HttpExchange exchange, int status, String type, String message) throws IOException {
+    exchange.getResponseHeaders().set("x-amzn-ErrorType", type);
+    ObjectNode response = this.mapper.createObjectNode()
+        .put("__type", type)
+        .put("message", message);
+    write(exchange, status, this.mapper.writeValueAsBytes(response));
+  }
+
+  void write(HttpExchange exchange, int status, byte[] body) throws IOException {
+    exchange.getResponseHeaders().set("Content-Type", "application/x-amz-json-1.1");
+    exchange.getResponseHeaders().set("x-amzn-RequestId", UUID.randomUUID().toString());
+    exchange.sendResponseHeaders(status, body.length);
+    try (OutputStream outputStream = exchange.getResponseBody()) {
+      outputStream.write(body);
+    }
+  }
+
+  @Override
+  public void close() {
+    this.server.stop(0);
+    this.executorService.shutdownNow();
+  }
+
+  static class Secret {
+    final String name;
+    final String versionId;
+    final String secretString;
+
+    Secret(String name, String versionId, String secretString) {
+      this.name = name;
+      this.versionId = versionId;
+      this.secretString = secretString;
+    }
+
+    ObjectNode value(ObjectMapper mapper) {
+      ObjectNode node = mapper.createObjectNode()
+          .put("ARN", ARN_PREFIX + this.name)
+          .put("Name", this.name)
+          .put("VersionId", this.versionId)
+          .put("SecretString", this.secretString)
+          .put("CreatedDate", System.currentTimeMillis() / 1000D);
+      node.putArray("VersionStages").add(SecretsManagerConfigProvider.CURRENT_STAGE);
+      return node;
+    }
+  }
+}
@@ -0,0 +1,179 @@
+/**
+ * Copyright © 2021 Jeremy Custenborder (jcustenborder@gmail.com)
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.github.jcustenborder.kafka.config.aws;
+
+import com.amazonaws.services.secretsmanager.model.AWSSecretsManagerException;
+import com.amazonaws.services.secretsmanager.model.ResourceNotFoundException;
+import org.junit.jupiter.api.Test;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertNotNull;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+public class SecretsManagerThrottleTest {
+
+  static AWSSecretsManagerException throttled() {
+    AWSSecretsManagerException exception = new AWSSecretsManagerException("Rate exceeded");
+    exception.setErrorCode("ThrottlingException");
+    exception.setStatusCode(400);
+    return exception;
+  }
+
+  @Test
+  public void retriesThrottledRequests() {
+    SecretsManagerThrottle throttle = new SecretsManagerThrottle(100D, 8);
+    AtomicInteger attempts = new AtomicInteger();
+    String result = throttle.execute(() -> {
+      if (attempts.incrementAndGet() < 3) {
+        throw throttled();
+      }
+      return "value";
+    });
+    assertEquals("value", result);
+    assertEquals(3, attempts.get());
+    assertTrue(throttle.rate < 100D, "rate should have been reduced");
+    assertTrue(throttle.concurrency < 8D, "concurrency should have been reduced");
+    assertEquals(0, throttle.inFlight);
+  }
+
+  @Test
+  public void recoversAfterSuccess() {
+    SecretsManagerThrottle throttle = new SecretsManagerThrottle(100D, 8);
+    throttle.onThrottled(throttle.generation());
+    assertEquals(50D, throttle.rate);
+    assertEquals(4D, throttle.concurrency);
+    for (int i = 0; i < 100; i++) {
+      throttle.onSuccess();
+    }
+    assertEquals(100D, throttle.rate);
+    assertEquals(8D, throttle.concurrency);
+  }
+
+  @Test
+  public void concurrentThrottlesReduceOnce() throws Exception {
+    final int requests = 4;
+    SecretsManagerThrottle throttle = new SecretsManagerThrottle(100D, 8);
+    CountDownLatch inFlight = new CountDownLatch(requests);
+    ExecutorService executorService = Executors.newFixedThreadPool(requests);
+    try {
+      List<Future<String>> results = new ArrayList<>();
+      for (int i = 0; i < requests; i++) {
+        AtomicInteger attempts = new AtomicInteger();
+        results.add(executorService.submit(() -> throttle.execute(() -> {
+          if (1 == attempts.incrementAndGet()) {
+            inFlight.countDown();
+            try {
+              inFlight.await(10, TimeUnit.SECONDS);
+            } catch (InterruptedException ex) {
+              throw new IllegalStateException(ex);
+            }
+            throw throttled();
+          }
+          return "value";
+        })));
+      }
+      for (Future<String> result : results) {
+        assertEquals("value", result.get(30, TimeUnit.SECONDS));
+      }
+    } finally {
+      executorService.shutdownNow();
+    }
+    assertEquals(requests, throttle.throttledCount.get());
+    assertEquals(1L, throttle.generation());
+    assertTrue(throttle.rate >= 50D, "rate should only have been halved once but was " + throttle.rate);
+    assertTrue(throttle.concurrency >= 4D, "concurrency should only have been halved once but was " + throttle.concurrency);
+  }
+
+  @Test
+  public void givesUpAfterMaxAttempts() {
+    SecretsManagerThrottle throttle = new SecretsManagerThrottle(1000D, 8);
+    AtomicInteger attempts = new AtomicInteger();
+    assertThrows(AWSSecretsManagerException.class, () -> throttle.execute(() -> {
+      attempts.incrementAndGet();
+      throw throttled();
+    }));
+    assertEquals(SecretsManagerThrottle.MAX_ATTEMPTS, attempts.get());
+    assertEquals(0, throttle.inFlight);
+  }
+
+  @Test
+  public void otherErrorsAreNotRetried() {
+    SecretsManagerThrottle throttle = new SecretsManagerThrottle(100D, 8);
+    AtomicInteger attempts = new AtomicInteger();
+    assertThrows(ResourceNotFoundException.class, () -> throttle.execute(() -> {
+      attempts.incrementAndGet();
+      throw new ResourceNotFoundException("not found");
+    }));
+    assertEquals(1, attempts.get());
+    assertEquals(100D, throttle.rate);
+  }
+
+  @Test
+  public void asyncCallsAreQueuedWithoutBlocking() throws Exception {
+    SecretsManagerThrottle throttle = new SecretsManagerThrottle(1000D, 2);
+    BlockingQueue<CompletableFuture<Integer>> started = new LinkedBlockingQueue<>();
+    List<CompletableFuture<Integer>> results = new ArrayList<>();
+    for (int i = 0; i < 10; i++) {
+      results.add(throttle.executeAsync(() -> {
+        CompletableFuture<Integer> call = new CompletableFuture<>();
+        started.add(call);
+        return call;
+      }));
+    }
+    assertEquals(2, started.size(), "only the available slots should have been started");
+    assertEquals(2, throttle.inFlight());
+    for (int i = 0; i < 10; i++) {
+      CompletableFuture<Integer> call = started.poll(10, TimeUnit.SECONDS);
+      assertNotNull(call, "queued call was not started");
+      assertTrue(throttle.inFlight() <= 2);
+      call.complete(i);
+    }
+    CompletableFuture.allOf(results.toArray(new CompletableFuture[0])).get(10, TimeUnit.SECONDS);
+    assertEquals(0, throttle.inFlight());
+  }
+
+  @Test
+  public void asyncRetriesThrottledRequests() throws Exception {
+    SecretsManagerThrottle throttle = new SecretsManagerThrottle(1000D, 8);
+    AtomicInteger attempts = new AtomicInteger();
+    CompletableFuture<String> result = throttle.executeAsync(() -> {
+      CompletableFuture<String> call = new CompletableFuture<>();
+      if (attempts.incrementAndGet() < 3) {
+        call.completeExceptionally(throttled());
+      } else {
+        call.complete("value");
+      }
+      return call;
+    });
+    assertEquals("value", result.get(10, TimeUnit.SECONDS));
+    assertEquals(3, attempts.get());
+    assertEquals(2L, throttle.retryCount.get());
+    assertEquals(0, throttle.inFlight());
+  }
+}
@@ -0,0 +1,109 @@
+/**
+ * Copyright © 2021 Jeremy Custenborder (jcustenborder@gmail.com)
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.github.jcustenborder.kafka.config.aws;
+
+import com.amazonaws.services.secretsmanager.AWSSecretsManager;
+import com.google.common.collect.ImmutableMap;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+
+import static org.junit.jupiter.api.Assertions.assertNotSame;
+import static org.junit.jupiter.api.Assertions.assertSame;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.never;
+import static org.mockito.Mockito.times;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.when;
+
+public class SharedSecretsManagerFactoryTest {
+  SecretsManagerFactory delegate;
+  SharedSecretsManagerFactory factory;
+
+  @BeforeEach
+  public void beforeEach() {
+    this.delegate = mock(SecretsManagerFactory.class);
+    when(this.delegate.create(any())).thenAnswer(invocationOnMock -> mock(AWSSecretsManager.class));
+    this.factory = new SharedSecretsManagerFactory(this.delegate);
+  }
+
+  @Test
+  public void sameSettingsShareClient() {
+    SecretsManagerConfigProviderConfig config = new SecretsManagerConfigProviderConfig(
+        ImmutableMap.of(SecretsManagerConfigProviderConfig.REGION_CONFIG, "us-west-2")
+    );
+    AWSSecretsManager first = this.factory.create(config);
+    AWSSecretsManager second = this.factory.create(config);
+    assertSame(first, second);
+    verify(this.delegate, times(1)).create(any());
+
+    this.factory.release(first);
+    verify(this.delegate, never()).release(any());
+    this.factory.release(second);
+    verify(this.delegate, times(1)).release(first);
+    assertTrue(this.factory.references.isEmpty());
+  }
+
+  @Test
+  public void differentSettingsDoNotShareClient() {
+    AWSSecretsManager west = this.factory.create(
+        new SecretsManagerConfigProviderConfig(
+            ImmutableMap.of(SecretsManagerConfigProviderConfig.REGION_CONFIG, "us-west-2")
+        )
+    );
+    AWSSecretsManager east = this.factory.create(
+        new SecretsManagerConfigProviderConfig(
+            ImmutableMap.of(SecretsManagerConfigProviderConfig.REGION_CONFIG, "us-east-1")
+        )
+    );
+    assertNotSame(west, east);
+    verify(this.delegate, times(2)).create(any());
+  }
+
+  @Test
+  public void differentSessionSettingsDoNotShareClient() {
+    final String roleArn = "arn:aws:iam::123456789012:role/config-provider";
+    AWSSecretsManager first = this.factory.create(
+        new SecretsManagerConfigProviderConfig(
+            ImmutableMap.of(
+                SecretsManagerConfigProviderConfig.ASSUME_ROLE_ARN_CONFIG, roleArn,
+                SecretsManagerConfigProviderConfig.ASSUME_ROLE_SESSION_NAME_CONFIG, "first"
+            )
+        )
+    );
+    AWSSecretsManager second = this.factory.create(
+        new SecretsManagerConfigProviderConfig(
+            ImmutableMap.of(
+                SecretsManagerConfigProviderConfig.ASSUME_ROLE_ARN_CONFIG, roleArn,
+                SecretsManagerConfigProviderConfig.ASSUME_ROLE_SESSION_NAME_CONFIG, "second"
+            )
+        )
+    );
+    AWSSecretsManager longer = this.factory.create(
+        new SecretsManagerConfigProviderConfig(
+            ImmutableMap.of(
+                SecretsManagerConfigProviderConfig.ASSUME_ROLE_ARN_CONFIG, roleArn,
+                SecretsManagerConfigProviderConfig.ASSUME_ROLE_SESSION_NAME_CONFIG, "first",
+                SecretsManagerConfigProviderConfig.ASSUME_ROLE_SESSION_DURATION_SECONDS_CONFIG, "7200"
+            )
+        )
+    );
+    assertNotSame(first, second);
+    assertNotSame(first, longer);
+    verify(this.delegate, times(3)).create(any());
+  }
+}